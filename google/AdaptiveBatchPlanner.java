@@ -0,0 +1,112 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the size of the batches to how the service is doing, in the manner of TCP congestion
+ * control (additive increase, multiplicative decrease).
+ * <p>
+ * The target size is a fraction of the largest batch the API accepts, applied to both the number of
+ * characters and the number of segments. Each request that comes back in less than the target
+ * latency, and that was filled to at least half the target, grows the fraction by a fixed step.
+ * Each timeout, rate limit or server error halves it, and so does a request slower than the target
+ * latency. As TCP does once per round trip, it is halved only once for the requests that were
+ * already in flight: a request sent before the last decrease cannot decrease it again. The fraction
+ * never goes below 1/16.
+ * <p>
+ * The fraction starts at 1, the largest batch the API accepts, which is what is sent without the
+ * planner. Enabling it thus never makes the first batches of a job smaller; it only shrinks them once
+ * the service shows signs of trouble.
+ * <p>
+ * The planner listens to the attempts of a {@link RequestExecutor} at the batches it sized, and only
+ * these: single queries would make it grow or shrink on requests it has no say over.
+ */
+public class AdaptiveBatchPlanner implements RequestExecutor.Listener {
+    private static final double MIN_LEVEL = 1.0 / 16;
+    private static final double INCREASE_STEP = 1.0 / 16;
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final int maxChars;
+    private final int maxSegments;
+    private volatile long targetLatencyMs;
+    private double level = 1.0;
+    // When the level was last decreased, in System.nanoTime()
+    private long lastDecrease = Long.MIN_VALUE;
+
+    /**
+     * @param maxChars largest number of characters in a request.
+     * @param maxSegments largest number of segments in a request.
+     * @param targetLatencyMs latency above which requests are considered too slow, 0 for none.
+     */
+    public AdaptiveBatchPlanner(int maxChars, int maxSegments, long targetLatencyMs) {
+        this.maxChars = maxChars;
+        this.maxSegments = maxSegments;
+        this.targetLatencyMs = targetLatencyMs;
+    }
+
+    public void setTargetLatencyMs(long targetLatencyMs) {
+        this.targetLatencyMs = targetLatencyMs;
+    }
+
+    /**
+     * Gets the number of characters a batch should currently hold at most.
+     */
+    public synchronized int getTargetChars() {
+        return Math.max(1, (int)(maxChars * level));
+    }
+
+    /**
+     * Gets the number of segments a batch should currently hold at most.
+     */
+    public synchronized int getTargetSegments() {
+        return Math.max(1, (int)Math.ceil(maxSegments * level));
+    }
+
+    @Override
+    public synchronized void onSuccess(int charCount, long latencyMs) {
+        if (targetLatencyMs > 0 && latencyMs > targetLatencyMs) {
+            decrease(latencyMs);
+        }
+        else if (charCount * 2 >= getTargetChars()) {
+            level = Math.min(1.0, level + INCREASE_STEP);
+        }
+    }
+
+    @Override
+    public synchronized void onFailure(int charCount, long latencyMs, RetryPolicy.Decision decision) {
+        if (decision == RetryPolicy.Decision.RETRY) {
+            decrease(latencyMs);
+        }
+    }
+
+    private void decrease(long latencyMs) {
+        long now = System.nanoTime();
+        if (lastDecrease != Long.MIN_VALUE && now - TimeUnit.MILLISECONDS.toNanos(latencyMs) < lastDecrease) {
+            // Sent before the last decrease, so already accounted for
+            return;
+        }
+        lastDecrease = now;
+        level = Math.max(MIN_LEVEL, level * DECREASE_FACTOR);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("targetChars=%d, targetSegments=%d", getTargetChars(), getTargetSegments());
+    }
+}
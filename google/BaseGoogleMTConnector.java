@@ -0,0 +1,659 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+
+
+package net.sf.okapi.connectors.google;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.okapi.common.IParameters;
+import net.sf.okapi.common.LocaleId;
+import net.sf.okapi.common.Util;
+import net.sf.okapi.common.exceptions.OkapiException;
+import net.sf.okapi.common.query.QueryResult;
+import net.sf.okapi.common.resource.ITextUnit;
+import net.sf.okapi.common.resource.TextFragment;
+import net.sf.okapi.lib.translation.BaseConnector;
+import net.sf.okapi.lib.translation.QueryUtil;
+
+/**
+ * Base of the Google MT connectors. Texts are taken from the cache where possible, repeated texts
+ * and texts another call is already translating are only sent once, long texts are split into
+ * chunks, and the rest is packed into as few queries as possible, whose responses are put back in
+ * the order of the texts. The connectors only tell how to make and send the queries of their API.
+ */
+public abstract class BaseGoogleMTConnector<P extends GoogleMTParameters> extends BaseConnector {
+
+    protected final Logger LOG = LoggerFactory.getLogger(getClass());
+    protected P params;
+    protected final GoogleMTAPI api;
+    protected final RequestExecutor executor;
+    protected final AdaptiveBatchPlanner planner;
+    private final ThreadLocal<QueryUtil> util = ThreadLocal.withInitial(QueryUtil::new);
+    private BatchDispatcher dispatcher;
+    private QueryCoalescer coalescer;
+    private final BatchPacker.Stats packingStats = new BatchPacker.Stats();
+    private final HedgingPolicy hedging = new HedgingPolicy(95, 5);
+    // Resources shared with the other connectors using the same settings
+    private final SharedResources.Slot<TranslationCache> cacheSlot = new SharedResources.Slot<>(TranslationCache.class);
+    private final SharedResources.Slot<RateLimiter> rateLimiterSlot = new SharedResources.Slot<>(RateLimiter.class);
+    private final SharedResources.Slot<ConcurrencyLimiter> concurrencyLimiterSlot =
+            new SharedResources.Slot<>(ConcurrencyLimiter.class);
+    private final SharedResources.Slot<SingleFlight> inFlightSlot = new SharedResources.Slot<>(SingleFlight.class);
+
+    /**
+     * @param params the parameters of the connector.
+     * @param api the API the queries are sent through.
+     * @param planner the planner adapting the size of the batches, starting from the limits of the API.
+     */
+    protected BaseGoogleMTConnector (P params, GoogleMTAPI api, AdaptiveBatchPlanner planner) {
+        this.params = params;
+        this.api = api;
+        this.planner = planner;
+        executor = new RequestExecutor(params, this::getRateLimiter, this::getConcurrencyLimiter);
+    }
+
+    /**
+     * Makes an empty query of the API of this connector, for the current languages.
+     */
+    protected abstract <T> GoogleQueryBuilder<T> newQueryBuilder ();
+
+    /**
+     * Checks that the parameters hold what the API of this connector needs to be called.
+     * @throws OkapiException if something is missing.
+     */
+    protected abstract void checkCredentials ();
+
+    /**
+     * Gets what identifies the credentials: the connectors using the same share their rate limits
+     * and their translations in flight.
+     */
+    protected abstract String getCredentialsKey ();
+
+    /**
+     * Gets what identifies the endpoint the queries are sent to.
+     */
+    protected abstract String getEndpointKey ();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void setParameters (IParameters params) {
+        this.params = (P)params;
+        api.setParameters(this.params);
+        executor.setParameters(this.params);
+        planner.setTargetLatencyMs(this.params.getTargetLatencyMs());
+    }
+
+    @Override
+    public P getParameters () {
+        return params;
+    }
+
+    @Override
+    public synchronized void close () {
+        if ( dispatcher != null ) {
+            dispatcher.shutdown();
+            dispatcher = null;
+        }
+        closeCache();
+        rateLimiterSlot.release();
+        concurrencyLimiterSlot.release();
+        inFlightSlot.release();
+        if ( packingStats.getTextCount() > 0 ) {
+            LOG.info("Google MT requests since the connector was opened: {}", packingStats);
+        }
+        api.close();
+    }
+
+    @Override
+    public void open () {
+        executor.resetFailures();
+        packingStats.reset();
+        // Gets the client ready while the job starts
+        api.open();
+        // Opens the cache file early, if there is one
+        getCache();
+    }
+
+    protected synchronized BatchDispatcher getDispatcher () {
+        if (( dispatcher == null ) || ( dispatcher.getParallelism() != Math.max(1, params.getMaxConcurrentBatches()) )
+                || ( dispatcher.isVirtualThreads() != params.getUseVirtualThreads() )) {
+            if ( dispatcher != null ) {
+                dispatcher.shutdown();
+            }
+            dispatcher = new BatchDispatcher(params.getMaxConcurrentBatches(), params.getUseVirtualThreads());
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Gets the policy sending slow single queries again, whose number of copies sent can be monitored.
+     */
+    public HedgingPolicy getHedgingPolicy () {
+        hedging.configure(params.getHedgePercentile(), params.getHedgeBudgetPercent());
+        return hedging;
+    }
+
+    /**
+     * Gets the API the copies of slow queries are sent through: the same as for the first queries
+     * by default.
+     */
+    protected GoogleMTAPI getHedgeApi () {
+        return api;
+    }
+
+    /**
+     * Gets the number of texts and requests sent since the connector was opened, and, once counting
+     * it is turned on, the number of requests filling the batches in input order would have taken.
+     */
+    public BatchPacker.Stats getPackingStats () {
+        return packingStats;
+    }
+
+    /**
+     * Gets the coalescer gathering the single queries made at about the same time into batches.
+     */
+    protected synchronized QueryCoalescer getCoalescer () {
+        if ( coalescer == null ) {
+            coalescer = new QueryCoalescer(texts -> translateTexts(texts, texts,
+                    new TextQueryResultBuilder(params, getName(), getWeight())),
+                    params.getCoalesceWindowMs(), params.getCoalesceMaxSize());
+        }
+        else {
+            coalescer.configure(params.getCoalesceWindowMs(), params.getCoalesceMaxSize());
+        }
+        return coalescer;
+    }
+
+    /**
+     * Gets the translation cache, shared by the connectors with the same cache settings.
+     * @return the cache, or null if it is disabled.
+     */
+    protected TranslationCache getCache () {
+        if (( params.getCacheSize() <= 0 ) && Util.isEmpty(params.getCacheFile()) ) {
+            closeCache();
+            return null;
+        }
+        int size = Math.max(0, params.getCacheSize());
+        String cacheFile = params.getCacheFile();
+        long maxBytes = params.getCacheFileMaxMb() * 1024L * 1024L;
+        return cacheSlot.get(size + "\u0001" + cacheFile + "\u0001" + maxBytes,
+                () -> newCache(size, cacheFile, maxBytes), this::disposeCache);
+    }
+
+    private TranslationCache newCache (int size, String cacheFile, long maxBytes) {
+        TranslationCache cache = new TranslationCache(size);
+        if ( !Util.isEmpty(cacheFile) ) {
+            try {
+                cache.setStore(PersistentTranslationStore.open(cacheFile, maxBytes));
+            }
+            catch ( IOException e ) {
+                // Carry on with the memory cache only
+                LOG.warn("Could not open the cache file {}: {}", cacheFile, e.getMessage());
+            }
+        }
+        return cache;
+    }
+
+    private void disposeCache (TranslationCache cache) {
+        if ( cache.getStore() != null ) {
+            try {
+                cache.getStore().close();
+            }
+            catch ( IOException e ) {
+                LOG.warn("Could not close the cache file: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void closeCache () {
+        cacheSlot.release();
+    }
+
+    /**
+     * Gets the translations in flight, shared by the connectors using the same credentials.
+     */
+    protected SingleFlight getInFlight () {
+        return inFlightSlot.get(getCredentialsKey(), SingleFlight::new, null);
+    }
+
+    /**
+     * Gets the rate limiter shared by the connectors using the same credentials.
+     * @return the limiter, or null if no limit is set.
+     */
+    protected RateLimiter getRateLimiter () {
+        if (( params.getMaxCharsPer100s() <= 0 ) && ( params.getMaxRequestsPer100s() <= 0 )) {
+            return null;
+        }
+        RateLimiter limiter = rateLimiterSlot.get(getCredentialsKey(), RateLimiter::new, null);
+        limiter.setLimits(params.getMaxCharsPer100s(), params.getMaxRequestsPer100s());
+        return limiter;
+    }
+
+    /**
+     * Gets the planner adapting the size of the batches, whose current targets can be monitored.
+     * It is only used when the <code>adaptiveBatching</code> parameter is set.
+     */
+    public AdaptiveBatchPlanner getBatchPlanner () {
+        return planner;
+    }
+
+    /**
+     * Gets the circuit breaker of this connector, for instance to listen to its state changes.
+     */
+    public CircuitBreaker getCircuitBreaker () {
+        return executor.getCircuitBreaker();
+    }
+
+    /**
+     * Gets the limiter of the requests in flight, shared by the connectors sending to the same
+     * endpoint with the same credentials.
+     * @return the limiter, or null if the concurrency is not adaptive.
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter () {
+        if ( !params.getAdaptiveConcurrency() ) {
+            return null;
+        }
+        ConcurrencyLimiter limiter = concurrencyLimiterSlot.get(getEndpointKey() + "\u0001" + getCredentialsKey(),
+                () -> new ConcurrencyLimiter(1), null);
+        limiter.setMaxLimit(params.getMaxConcurrentBatches());
+        return limiter;
+    }
+
+    /**
+     * Gets the statistics of the translation cache. This doesn't open the cache: the statistics
+     * are only there once the connector is opened or has translated something.
+     * @return the statistics, or null if the connector holds no cache.
+     */
+    public TranslationCache.Stats getCacheStats () {
+        TranslationCache cache = cacheSlot.peek();
+        return (cache == null) ? null : cache.getStats();
+    }
+
+    @Override
+    public int query (String plainText) {
+        return setResult(translate(plainText));
+    }
+
+    @Override
+    public int query (TextFragment frag) {
+        return setResult(translate(frag));
+    }
+
+    /**
+     * Translates a plain text. Unlike {@link #query(String)}, the result is returned rather than kept
+     * in the connector, so this can be called from several threads at once.
+     * @return the result, or null if the text is empty.
+     */
+    public QueryResult translate (String plainText) {
+        return _translate(plainText, plainText, new TextQueryResultBuilder(params, getName(), getWeight()));
+    }
+
+    /**
+     * Translates a fragment. Unlike {@link #query(TextFragment)}, the result is returned rather than
+     * kept in the connector, so this can be called from several threads at once.
+     * @return the result, or null if the fragment is empty.
+     */
+    public QueryResult translate (TextFragment frag) {
+        return _translate(util.get().toCodedHTML(frag), frag,
+                new FragmentQueryResultBuilder(params, getName(), getWeight()));
+    }
+
+    protected <T> int _query (String queryText, T originalText, QueryResultBuilder<T> qrBuilder) {
+        return setResult(_translate(queryText, originalText, qrBuilder));
+    }
+
+    private int setResult (QueryResult queryResult) {
+        if ( queryResult == null ) {
+            current = -1;
+            return 0;
+        }
+        result = queryResult;
+        current = 0;
+        return 1;
+    }
+
+    /**
+     * Translates one text without touching the state of the connector.
+     * @return the result, or null if the text is empty.
+     */
+    protected <T> QueryResult _translate (String queryText, T originalText, QueryResultBuilder<T> qrBuilder) {
+        if (queryText.isEmpty()) return null;
+        checkCredentials();
+
+        TranslationCache cache = getCache();
+        String cacheKey = TranslationCache.keyOf(srcCode, trgCode, params.getModelKey(), queryText);
+        if (cache != null) {
+            TranslationResponse cached = cache.get(cacheKey);
+            if (cached != null) {
+                return qrBuilder.convertResponses(Collections.singletonList(cached), originalText).get(0);
+            }
+        }
+        if (params.getCoalesceWindowMs() > 0) {
+            // Misses are sent in one batch with the other queries made at about the same time
+            TranslationResponse response = getCoalescer().translate(queryText);
+            if (response == null) {
+                LOG.error("Received no results for query {}", queryText);
+                return qrBuilder.createDummyResponse(originalText);
+            }
+            return qrBuilder.convertResponses(Collections.singletonList(response), originalText).get(0);
+        }
+        // If another call is already translating the same text, wait for it rather than pay twice
+        TranslationResponse response = getInFlight().run(cacheKey, () -> {
+            GoogleQueryBuilder<T> qb = newQueryBuilder();
+            qb.addQuery(queryText, originalText);
+            List<TranslationResponse> responses = (params.getHedgePercentile() > 0)
+                    ? executeHedgedQuery(qb) : executeQuery(qb, qrBuilder);
+            if (responses == null) {
+                // Underlying call failed for some reason, probably a timeout
+                LOG.error("Received no results for query {}", qb.getQuery());
+                return null;
+            }
+            if (cache != null) {
+                cache.put(cacheKey, responses.get(0));
+            }
+            return responses.get(0);
+        });
+        if (response == null) {
+            // Return the source text as a dummy translation so that we can maintain the correct indexing
+            return qrBuilder.createDummyResponse(originalText);
+        }
+        List<QueryResult> queryResults = qrBuilder.convertResponses(Collections.singletonList(response), originalText);
+        if (queryResults.size() > 0) {
+            return queryResults.iterator().next();
+        }
+        throw new OkapiException("Could not retrieve results from Google after " +
+                                 params.getRetryCount() + " attempts.");
+    }
+
+    @Override
+    public List<List<QueryResult>> batchQueryText (List<String> plainTexts) {
+        current = -1;
+        return translateBatchText(plainTexts);
+    }
+
+    @Override
+    public List<List<QueryResult>> batchQuery (List<TextFragment> fragments) {
+        current = -1;
+        return translateBatch(fragments);
+    }
+
+    /**
+     * Translates a list of plain texts. Like {@link #translate(String)}, this can be called from
+     * several threads at once.
+     */
+    public List<List<QueryResult>> translateBatchText (List<String> plainTexts) {
+        return _batchQuery(plainTexts, plainTexts, new TextQueryResultBuilder(params, getName(), getWeight()));
+    }
+
+    /**
+     * Translates a list of fragments. Like {@link #translate(TextFragment)}, this can be called from
+     * several threads at once.
+     */
+    public List<List<QueryResult>> translateBatch (List<TextFragment> fragments) {
+        return _batchQuery(util.get().toCodedHTML(fragments), fragments,
+                new FragmentQueryResultBuilder(params, getName(), getWeight()));
+    }
+
+    protected <T> List<List<QueryResult>> _batchQuery (List<String> texts, List<T> originalTexts,
+                                                       QueryResultBuilder<T> qrBuilder) {
+        List<TranslationResponse> responses = translateTexts(texts, originalTexts, qrBuilder);
+        List<List<QueryResult>> queryResults = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            TranslationResponse response = responses.get(i);
+            if (response != null) {
+                queryResults.add(qrBuilder.convertResponses(Collections.singletonList(response), originalTexts.get(i)));
+            }
+            else {
+                // Return the source text as a dummy translation so that we can maintain the correct indexing
+                queryResults.add(Collections.singletonList(qrBuilder.createDummyResponse(originalTexts.get(i))));
+            }
+        }
+        return queryResults;
+    }
+
+    /**
+     * Translates texts, taking them from the cache where possible.
+     * @return one response per text, null for the texts that could not be translated.
+     */
+    protected <T> List<TranslationResponse> translateTexts (List<String> texts, List<T> originalTexts,
+                                                            QueryResultBuilder<T> qrBuilder) {
+        checkCredentials();
+        // Texts found in the cache don't need to be sent at all
+        TranslationCache cache = getCache();
+        String model = params.getModelKey();
+        String[] cacheKeys = new String[texts.size()];
+        TranslationResponse[] responses = new TranslationResponse[texts.size()];
+        // Texts to send, a chunk at a time for long texts, in input order, with their positions
+        List<Integer> pending = new ArrayList<>(texts.size());
+        List<String> entries = new ArrayList<>(texts.size());
+        List<T> entrySources = new ArrayList<>(texts.size());
+        // Repeated texts are only sent once: copyOf gives the position of their first occurrence
+        Map<String, Integer> firstPositions = new HashMap<>();
+        int[] copyOf = new int[texts.size()];
+        Arrays.fill(copyOf, -1);
+        // Very long texts are split into chunks, sent as separate entries of the batches so that they
+        // are translated in parallel. Their position is pending once per chunk.
+        Map<Integer, List<String>> chunks = new HashMap<>();
+        // Texts another call is already translating are not sent again, but wait for its response.
+        // The calls started here must be finished whatever happens, as others may be waiting for them.
+        SingleFlight inFlight = getInFlight();
+        Map<Integer, CompletableFuture<TranslationResponse>> started = new HashMap<>();
+        Map<Integer, CompletableFuture<TranslationResponse>> joined = new HashMap<>();
+        try {
+            for (int i = 0; i < texts.size(); i++) {
+                String sourceText = texts.get(i);
+                Integer first = firstPositions.putIfAbsent(sourceText, i);
+                if (first != null) {
+                    copyOf[i] = first;
+                    continue;
+                }
+                cacheKeys[i] = TranslationCache.keyOf(srcCode, trgCode, model, sourceText);
+                if (cache != null) {
+                    responses[i] = cache.get(cacheKeys[i]);
+                    if (responses[i] != null) {
+                        continue;
+                    }
+                }
+                CompletableFuture<TranslationResponse> call = new CompletableFuture<>();
+                CompletableFuture<TranslationResponse> other = inFlight.start(cacheKeys[i], call);
+                if (other != null) {
+                    joined.put(i, other);
+                    continue;
+                }
+                started.put(i, call);
+                List<String> parts = Collections.singletonList(sourceText);
+                if (sourceText.length() > SegmentChunker.DEFAULT_CHUNK_LENGTH) {
+                    parts = SegmentChunker.split(sourceText, SegmentChunker.DEFAULT_CHUNK_LENGTH);
+                    chunks.put(i, parts);
+                }
+                for (String part : parts) {
+                    pending.add(i);
+                    entries.add(part);
+                    entrySources.add(originalTexts.get(i));
+                }
+            }
+            // Pack the texts into as few requests as possible. They may be sent several at once, but
+            // their responses are put back in the order of the requests, which the plan maps back to
+            // the order of the texts.
+            BatchPacker.Plan<GoogleQueryBuilder<T>> plan = BatchPacker.pack(entries, entrySources,
+                    this::newBatchQueryBuilder);
+            packingStats.record(plan);
+            List<TranslationResponse> sent = plan.toInputOrder(sendBatches(plan, entries, qrBuilder));
+            for (int j = 0; j < pending.size(); j++) {
+                int i = pending.get(j);
+                List<String> parts = chunks.get(i);
+                if (parts == null) {
+                    responses[i] = sent.get(j);
+                }
+                else {
+                    responses[i] = SegmentChunker.joinResponses(texts.get(i), parts, sent.subList(j, j + parts.size()));
+                    j += parts.size() - 1;
+                }
+                if (cache != null && responses[i] != null) {
+                    cache.put(cacheKeys[i], responses[i]);
+                }
+            }
+        }
+        finally {
+            for (Map.Entry<Integer, CompletableFuture<TranslationResponse>> entry : started.entrySet()) {
+                inFlight.finish(cacheKeys[entry.getKey()], entry.getValue(), responses[entry.getKey()]);
+            }
+        }
+        for (Map.Entry<Integer, CompletableFuture<TranslationResponse>> entry : joined.entrySet()) {
+            responses[entry.getKey()] = entry.getValue().join();
+        }
+        // Copies share the response of their first occurrence. They are still converted against their
+        // own original, so that each fragment gets its own codes back.
+        for (int i = 0; i < texts.size(); i++) {
+            if (copyOf[i] >= 0) {
+                responses[i] = responses[copyOf[i]];
+            }
+        }
+        return Arrays.asList(responses);
+    }
+
+    private <T> GoogleQueryBuilder<T> newBatchQueryBuilder () {
+        GoogleQueryBuilder<T> qb = newQueryBuilder();
+        if (params.getAdaptiveBatching()) {
+            planner.setTargetLatencyMs(params.getTargetLatencyMs());
+            qb.setLimits(planner.getTargetChars(), planner.getTargetSegments());
+        }
+        return qb;
+    }
+
+    /**
+     * Sends the queries of a packing plan: by default, the batches through the dispatcher, which may
+     * run several of them at once, and each oversized text by itself.
+     * @param plan the plan of the queries.
+     * @param entries the texts the plan was made from.
+     * @return the responses of the batches, in the order of the batches, followed by the ones of the
+     * oversized texts, with null responses for the queries that failed.
+     */
+    protected <T> List<TranslationResponse> sendBatches (BatchPacker.Plan<GoogleQueryBuilder<T>> plan,
+                                                         List<String> entries, QueryResultBuilder<T> qrBuilder) {
+        List<Callable<List<TranslationResponse>>> batches = new ArrayList<>(plan.getRequestCount());
+        for (GoogleQueryBuilder<T> batch : plan.getBatches()) {
+            batches.add(() -> flushQuery(batch, qrBuilder));
+        }
+        for (int k : plan.getOversized()) {
+            // An oversized segment that needs to be sent by itself
+            String part = entries.get(k);
+            GoogleQueryBuilder<T> single = newQueryBuilder();
+            batches.add(() -> {
+                TranslationResponse response = executeSingleSegmentQuery(single, part);
+                if (response == null) {
+                    // Underlying call failed for some reason, probably a timeout
+                    LOG.error("Received no results for query {}", single.getQuery());
+                }
+                return Collections.singletonList(response);
+            });
+        }
+        return getDispatcher().dispatch(batches);
+    }
+
+    /**
+     * Sends a batch query.
+     * @return one response per source of the query, with null responses if the query failed.
+     */
+    protected <T> List<TranslationResponse> flushQuery (GoogleQueryBuilder<T> qb, QueryResultBuilder<T> qrBuilder) {
+        LOG.debug("Flushing batch query of {} texts, {} characters", qb.getSourceCount(), qb.getCharacterCount());
+        List<TranslationResponse> batchResponses = executeBatchQuery(qb);
+        if (batchResponses == null) {
+            // Underlying call failed for some reason, probably a timeout
+            LOG.error("Received no results for query {}", qb.getQuery());
+            return Collections.nCopies(qb.getSourceCount(), null);
+        }
+        return batchResponses;
+    }
+
+    protected <T> TranslationResponse executeSingleSegmentQuery (GoogleQueryBuilder<T> qb, String sourceText) {
+        return executor.execute("_batchQuery", sourceText.length(), () -> api.translateSingleSegment(qb, sourceText));
+    }
+
+    protected <T> List<TranslationResponse> executeQuery (GoogleQueryBuilder<T> qb, QueryResultBuilder<T> qrBuilder) {
+        return executor.execute("_batchQuery", qb.getCharacterCount(), () -> api.translate(qb));
+    }
+
+    /**
+     * Sends a query packed by the batch planner, telling the planner how it went.
+     */
+    protected <T> List<TranslationResponse> executeBatchQuery (GoogleQueryBuilder<T> qb) {
+        return executor.execute("_batchQuery", qb.getCharacterCount(), planner, () -> api.translate(qb));
+    }
+
+    /**
+     * Sends a single query, and sends it again if it is slower to answer than most.
+     */
+    protected <T> List<TranslationResponse> executeHedgedQuery (GoogleQueryBuilder<T> qb) {
+        try {
+            return getHedgingPolicy().send(
+                    () -> executor.executeAsync("_query", qb.getCharacterCount(), () -> api.translateAsync(qb)),
+                    () -> executor.executeAsync("_query (hedge)", qb.getCharacterCount(),
+                            () -> getHedgeApi().translateAsync(qb))).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OkapiException("Interrupted while waiting for Google MT", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new OkapiException("Error querying the MT server: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    public List<LocaleId> getSupportedLanguages () {
+        List<String> codes = executor.execute("getSupportedLanguages", 0, api::getLanguages);
+        if (codes == null) {
+            throw new OkapiException("Could not retrieve language list from Google after " +
+                                     params.getRetryCount() + " attempts.");
+        }
+        List<LocaleId> locales = new ArrayList<>();
+        for (String code : codes) {
+            locales.add(convertGoogleLanguageCode(code));
+        }
+        return locales;
+    }
+
+    protected LocaleId convertGoogleLanguageCode (String lang) {
+        return LocaleId.fromBCP47(lang);
+    }
+
+    @Override
+    public void leverage (ITextUnit tu) {
+        leverageUsingBatchQuery(tu);
+    }
+
+    @Override
+    public void batchLeverage (List<ITextUnit> tuList) {
+        batchLeverageUsingBatchQuery(tuList);
+    }
+}
@@ -0,0 +1,192 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.okapi.common.exceptions.OkapiException;
+
+/**
+ * Runs the batches of a batch query, up to a given number of them at the same time.
+ * <p>
+ * Each batch produces a list of results, and {@link #dispatch(List)} returns the concatenation of
+ * these lists in the order the batches were given, whatever order they complete in.  With a
+ * parallelism of 1 the batches are simply run one after the other on the calling thread.
+ * <p>
+ * In virtual thread mode every batch runs on its own virtual thread, so the time spent waiting on
+ * the server or between retries does not hold an OS thread. The parallelism is then enforced with a
+ * semaphore rather than by the size of a pool. Virtual threads require Java 21; on older runtimes
+ * the dispatcher falls back to a regular pool.
+ */
+public class BatchDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchDispatcher.class);
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+    // Executors.newVirtualThreadPerTaskExecutor(), looked up at runtime since we still run on older JVMs
+    private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private final int parallelism;
+    private final boolean virtualThreads;
+    private final Semaphore permits;
+    private ExecutorService executor;
+
+    public BatchDispatcher(int parallelism) {
+        this(parallelism, false);
+    }
+
+    public BatchDispatcher(int parallelism, boolean virtualThreads) {
+        this.parallelism = Math.max(1, parallelism);
+        this.virtualThreads = virtualThreads;
+        this.permits = virtualThreads ? new Semaphore(this.parallelism, true) : null;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public <R> List<R> dispatch(List<Callable<List<R>>> batches) {
+        List<R> results = new ArrayList<>();
+        if (!virtualThreads && (parallelism == 1 || batches.size() == 1)) {
+            for (Callable<List<R>> batch : batches) {
+                results.addAll(call(batch));
+            }
+            return results;
+        }
+        List<Future<List<R>>> futures = new ArrayList<>(batches.size());
+        ExecutorService executor = getExecutor();
+        for (Callable<List<R>> batch : batches) {
+            futures.add(executor.submit(virtualThreads ? bounded(batch) : batch));
+        }
+        try {
+            for (Future<List<R>> future : futures) {
+                results.addAll(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OkapiException("Interrupted while waiting for Google MT", e);
+        }
+        catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+        finally {
+            // Only has an effect if we are bailing out early
+            for (Future<List<R>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null && virtualThreads) {
+            executor = newVirtualThreadExecutor();
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(parallelism, newThreadFactory());
+        }
+        return executor;
+    }
+
+    private <R> Callable<List<R>> bounded(Callable<List<R>> batch) {
+        return () -> {
+            permits.acquire();
+            try {
+                return batch.call();
+            }
+            finally {
+                permits.release();
+            }
+        };
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService)VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            }
+            catch (ReflectiveOperationException e) {
+                LOG.warn("Could not create a virtual thread executor: {}", e.getMessage());
+            }
+        }
+        else {
+            LOG.warn("Virtual threads are not available on this JVM, using platform threads.");
+        }
+        return null;
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        String prefix = "google-mt-batch-" + POOL_COUNT.incrementAndGet() + "-";
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static <R> List<R> call(Callable<List<R>> batch) {
+        try {
+            return batch.call();
+        }
+        catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException)t;
+        }
+        if (t instanceof Error) {
+            throw (Error)t;
+        }
+        return new OkapiException("Error querying the MT server: " + t.getMessage(), t);
+    }
+}
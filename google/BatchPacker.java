@@ -0,0 +1,249 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+
+package net.sf.okapi.connectors.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Packs texts into as few queries as possible, first-fit decreasing: the texts are taken from the
+ * longest to the shortest, and each goes into the first query that still has room for it. Filling
+ * the queries in input order instead leaves them half empty whenever a long text comes between
+ * short ones.
+ * <p>
+ * The room in a query is whatever {@link GoogleQueryBuilder#hasCapacity(String)} says, so the
+ * limits on characters, URL length and number of segments all apply. A text that doesn't fit even
+ * in an empty query is left out, to be sent by itself.
+ */
+public final class BatchPacker {
+
+    /**
+     * The queries made for a list of texts, and where each text went.
+     */
+    public static final class Plan<B> {
+        private final List<B> batches;
+        private final List<Integer> oversized;
+        // Position of the response of each text, in the responses of the batches followed by the
+        // responses of the oversized texts
+        private final int[] responsePositions;
+        private final IntSupplier inOrderCounter;
+        private int inOrderCount = -1;
+
+        Plan(List<B> batches, List<Integer> oversized, int[] responsePositions, IntSupplier inOrderCounter) {
+            this.batches = batches;
+            this.oversized = oversized;
+            this.responsePositions = responsePositions;
+            this.inOrderCounter = inOrderCounter;
+        }
+
+        public List<B> getBatches() {
+            return batches;
+        }
+
+        /**
+         * Gets the indexes of the texts too long for any query, in input order.
+         */
+        public List<Integer> getOversized() {
+            return oversized;
+        }
+
+        /**
+         * Gets the number of requests the plan makes, oversized texts included.
+         */
+        public int getRequestCount() {
+            return batches.size() + oversized.size();
+        }
+
+        /**
+         * Gets the number of requests filling the queries in input order would have made. This
+         * packs the texts a second time, so it is only worked out when asked for.
+         */
+        public int getInOrderRequestCount() {
+            if (inOrderCount < 0) {
+                inOrderCount = inOrderCounter.getAsInt();
+            }
+            return inOrderCount;
+        }
+
+        /**
+         * Puts responses back in the order of the texts.
+         * @param responses the responses to the texts of the batches, batch after batch, followed by
+         *        the responses to the oversized texts.
+         */
+        public <R> List<R> toInputOrder(List<R> responses) {
+            List<R> ordered = new ArrayList<>(responsePositions.length);
+            for (int position : responsePositions) {
+                ordered.add(responses.get(position));
+            }
+            return ordered;
+        }
+    }
+
+    /**
+     * Counts the requests made by plans, to see what packing saves. The requests filling the queries
+     * in input order would have made are only counted once {@link #setCountInOrder(boolean)} is on,
+     * as it takes packing every list of texts twice.
+     */
+    public static final class Stats {
+        private final AtomicLong texts = new AtomicLong();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong inOrderRequests = new AtomicLong();
+        private volatile boolean countInOrder;
+
+        public void setCountInOrder(boolean countInOrder) {
+            this.countInOrder = countInOrder;
+        }
+
+        public boolean getCountInOrder() {
+            return countInOrder;
+        }
+
+        public void record(Plan<?> plan) {
+            texts.addAndGet(plan.responsePositions.length);
+            requests.addAndGet(plan.getRequestCount());
+            if (countInOrder) {
+                inOrderRequests.addAndGet(plan.getInOrderRequestCount());
+            }
+        }
+
+        public void reset() {
+            texts.set(0);
+            requests.set(0);
+            inOrderRequests.set(0);
+        }
+
+        public long getTextCount() {
+            return texts.get();
+        }
+
+        public long getRequestCount() {
+            return requests.get();
+        }
+
+        /**
+         * Gets the number of requests filling the queries in input order would have made, for the
+         * plans recorded while {@link #setCountInOrder(boolean)} was on.
+         */
+        public long getInOrderRequestCount() {
+            return inOrderRequests.get();
+        }
+
+        @Override
+        public String toString() {
+            if (!countInOrder) {
+                return String.format("texts=%d, requests=%d", getTextCount(), getRequestCount());
+            }
+            return String.format("texts=%d, requests=%d, inOrderRequests=%d",
+                                 getTextCount(), getRequestCount(), getInOrderRequestCount());
+        }
+    }
+
+    private BatchPacker() {
+    }
+
+    /**
+     * Packs texts into queries.
+     * @param texts the texts to send.
+     * @param sources what each text is the translation of, passed to the queries.
+     * @param newBatch makes an empty query.
+     */
+    public static <T, B extends GoogleQueryBuilder<T>> Plan<B> pack(List<String> texts, List<T> sources,
+                                                                    Supplier<B> newBatch) {
+        Integer[] order = new Integer[texts.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Stable: texts of the same length stay in input order
+        Arrays.sort(order, (a, b) -> Integer.compare(texts.get(b).length(), texts.get(a).length()));
+
+        List<B> batches = new ArrayList<>();
+        List<Integer> oversized = new ArrayList<>();
+        int[] batchOf = new int[texts.size()];
+        for (int i : order) {
+            String text = texts.get(i);
+            int target = -1;
+            for (int b = 0; b < batches.size(); b++) {
+                if (batches.get(b).hasCapacity(text)) {
+                    target = b;
+                    break;
+                }
+            }
+            if (target < 0) {
+                B batch = newBatch.get();
+                if (!batch.hasCapacity(text)) {
+                    batchOf[i] = -1;
+                    oversized.add(i);
+                    continue;
+                }
+                batches.add(batch);
+                target = batches.size() - 1;
+            }
+            batches.get(target).addQuery(text, sources.get(i));
+            batchOf[i] = target;
+        }
+        Collections.sort(oversized);
+
+        // The texts of each batch were added in order of decreasing length: find where each landed
+        int[] offsets = new int[batches.size() + 1];
+        for (int b = 0; b < batches.size(); b++) {
+            offsets[b + 1] = offsets[b] + batches.get(b).getSourceCount();
+        }
+        int[] filled = new int[batches.size()];
+        int[] positions = new int[texts.size()];
+        for (int i : order) {
+            if (batchOf[i] >= 0) {
+                positions[i] = offsets[batchOf[i]] + filled[batchOf[i]]++;
+            }
+        }
+        for (int k = 0; k < oversized.size(); k++) {
+            positions[oversized.get(k)] = offsets[batches.size()] + k;
+        }
+        return new Plan<>(batches, oversized, positions, () -> countInOrder(texts, sources, newBatch));
+    }
+
+    /**
+     * Counts the requests made by filling the queries in input order, flushing a query whenever the
+     * next text doesn't fit.
+     */
+    private static <T, B extends GoogleQueryBuilder<T>> int countInOrder(List<String> texts, List<T> sources,
+                                                                         Supplier<B> newBatch) {
+        int count = 0;
+        B batch = null;
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            if (batch != null && batch.hasCapacity(text)) {
+                batch.addQuery(text, sources.get(i));
+                continue;
+            }
+            count++;
+            batch = newBatch.get();
+            if (batch.hasCapacity(text)) {
+                batch.addQuery(text, sources.get(i));
+            }
+            else {
+                batch = null;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,229 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker stopping calls to Google while it is failing.
+ * <p>
+ * The outcomes of the last calls are kept in a sliding window. While the breaker is
+ * {@link State#CLOSED}, calls go through; once the window is full and the share of failures in it
+ * reaches the threshold, the breaker opens. While {@link State#OPEN}, calls are refused straight
+ * away. After the open duration, the breaker lets a single probe call through
+ * ({@link State#HALF_OPEN}): if it succeeds the breaker closes again, otherwise it re-opens.
+ * <p>
+ * Listeners are told of every state change.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Receives the state changes of a breaker. Called on the thread that caused the change.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onStateChange(CircuitBreaker breaker, State from, State to);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private int windowSize;
+    private int failureRateThreshold;
+    private long openDurationMs;
+    // Ring buffer of the last outcomes, true for failures
+    private boolean[] window = new boolean[0];
+    private int windowPos, windowCount, failureCount;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    /**
+     * @param windowSize number of calls in the sliding window.
+     * @param failureRateThreshold percentage of failed calls at which the breaker opens.
+     * @param openDurationMs time to stay open before letting a probe through.
+     */
+    public CircuitBreaker(int windowSize, int failureRateThreshold, long openDurationMs) {
+        configure(windowSize, failureRateThreshold, openDurationMs);
+    }
+
+    /**
+     * Changes the settings. Changing the window size clears the window and closes the breaker.
+     */
+    public void configure(int windowSize, int failureRateThreshold, long openDurationMs) {
+        State from;
+        synchronized (this) {
+            this.failureRateThreshold = Math.max(1, Math.min(100, failureRateThreshold));
+            this.openDurationMs = Math.max(0, openDurationMs);
+            int size = Math.max(1, windowSize);
+            if (size == this.windowSize) {
+                return;
+            }
+            this.windowSize = size;
+            window = new boolean[this.windowSize];
+            clearWindow();
+            from = state;
+            state = State.CLOSED;
+            probeInFlight = false;
+        }
+        notifyListeners(from, State.CLOSED);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the percentage of failures in the current window.
+     */
+    public synchronized float getFailureRate() {
+        return (windowCount == 0) ? 0 : 100f * failureCount / windowCount;
+    }
+
+    /**
+     * Asks for permission to make a call. Each granted call must be followed by
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #release()}.
+     * @return false if the call should not be made.
+     */
+    public boolean tryAcquire() {
+        State from;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                from = State.OPEN;
+            }
+            else {
+                from = null;
+            }
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+        }
+        if (from != null) {
+            notifyListeners(from, State.HALF_OPEN);
+        }
+        return true;
+    }
+
+    public void onSuccess() {
+        State from = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                // The probe went through: the server is back
+                clearWindow();
+                probeInFlight = false;
+                from = state;
+                state = State.CLOSED;
+            }
+            else if (state == State.CLOSED) {
+                record(false);
+            }
+        }
+        if (from != null) {
+            notifyListeners(from, State.CLOSED);
+        }
+    }
+
+    public void onFailure() {
+        State from = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                probeInFlight = false;
+                from = state;
+            }
+            else if (state == State.CLOSED) {
+                record(true);
+                if (windowCount == windowSize && failureCount * 100 >= failureRateThreshold * windowCount) {
+                    from = state;
+                }
+            }
+            if (from != null) {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        }
+        if (from != null) {
+            notifyListeners(from, State.OPEN);
+        }
+    }
+
+    /**
+     * Ends a granted call whose outcome tells nothing about the health of the server.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == windowSize) {
+            if (window[windowPos]) {
+                failureCount--;
+            }
+        }
+        else {
+            windowCount++;
+        }
+        window[windowPos] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        windowPos = (windowPos + 1) % windowSize;
+    }
+
+    private void clearWindow() {
+        windowPos = 0;
+        windowCount = 0;
+        failureCount = 0;
+    }
+
+    private void notifyListeners(State from, State to) {
+        if (from == to) {
+            return;
+        }
+        if (to == State.OPEN) {
+            LOG.warn("Google MT circuit breaker open: calls are suspended for {} ms", openDurationMs);
+        }
+        else {
+            LOG.info("Google MT circuit breaker {} (was {})", to, from);
+        }
+        for (Listener listener : listeners) {
+            listener.onStateChange(this, from, to);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests in flight, adjusting the limit from the measured round-trip times
+ * in the manner of TCP Vegas.
+ * <p>
+ * The lowest round-trip time seen is taken as the time of a request when nothing is queued on the
+ * server side. From it and each new measure, the number of requests waiting in queues is estimated
+ * as <code>limit * (1 - minRtt / rtt)</code>. While that is small (below <code>3 log10(limit)</code>)
+ * the limit grows, while it is large (above <code>6 log10(limit)</code>) the limit shrinks, and a
+ * rate limit, timeout or server error halves it. The lowest round-trip time is forgotten every few
+ * hundred requests, so that a lasting change of the service is picked up.
+ * <p>
+ * The requests of all connectors going to the same endpoint with the same credentials compete for
+ * the same capacity, so they share one limiter through {@link SharedResources}.
+ */
+public class ConcurrencyLimiter {
+    private static final int MIN_RTT_RESET_SAMPLES = 500;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // Asynchronous callers waiting for a slot, served before the blocked threads
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private double limit;
+    private int maxLimit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samples;
+
+    /**
+     * @param maxLimit largest number of requests allowed in flight.
+     */
+    public ConcurrencyLimiter(int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        // Start low and let the limit grow
+        this.limit = 1;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            this.maxLimit = Math.max(1, maxLimit);
+            if (limit > this.maxLimit) {
+                limit = this.maxLimit;
+            }
+            granted = grant();
+            available.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Gets the current number of requests allowed in flight.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int)limit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a request to be allowed. Each successful call must be followed by a call to
+     * {@link #release(long, boolean)}.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int)limit || hasWaiters()) {
+                available.await();
+            }
+            inFlight++;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets a future completed once a request is allowed, so that waiting holds no thread. Once it
+     * completes, {@link #release(long, boolean)} must be called as after {@link #acquire()}.
+     * Cancelling it before then gives up waiting.
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        lock.lock();
+        try {
+            if (inFlight < (int)limit && !hasWaiters()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a request and updates the limit.
+     * @param rttNanos the round-trip time of the request, in nanoseconds.
+     * @param overloaded true if the request failed with a sign of overload (rate limit, timeout,
+     *        server error), false if it went through.
+     */
+    public void release(long rttNanos, boolean overloaded) {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            if (overloaded) {
+                limit = Math.max(1, limit / 2);
+            }
+            else if (rttNanos > 0) {
+                update(rttNanos);
+            }
+            granted = grant();
+            available.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Ends a request without using it to update the limit.
+     */
+    public void release() {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            granted = grant();
+            available.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Indicates if asynchronous callers are waiting, forgetting the ones that gave up. Called with
+     * the lock held.
+     */
+    private boolean hasWaiters() {
+        while (!waiters.isEmpty() && waiters.peekFirst().isDone()) {
+            waiters.pollFirst();
+        }
+        return !waiters.isEmpty();
+    }
+
+    /**
+     * Hands the free slots to the asynchronous callers waiting for them. Called with the lock held;
+     * the futures returned are completed after it is released, as they run the callers' code.
+     */
+    private List<CompletableFuture<Void>> grant() {
+        List<CompletableFuture<Void>> granted = null;
+        while (inFlight < (int)limit && hasWaiters()) {
+            if (granted == null) {
+                granted = new ArrayList<>();
+            }
+            granted.add(waiters.pollFirst());
+            inFlight++;
+        }
+        return (granted == null) ? Collections.emptyList() : granted;
+    }
+
+    private void complete(List<CompletableFuture<Void>> granted) {
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                // Gave up in the meantime: the slot goes to the next one
+                release();
+            }
+        }
+    }
+
+    private void update(long rttNanos) {
+        if (++samples >= MIN_RTT_RESET_SAMPLES) {
+            samples = 0;
+            minRttNanos = rttNanos;
+        }
+        else {
+            minRttNanos = Math.min(minRttNanos, rttNanos);
+        }
+        double step = Math.max(1, Math.log10(limit));
+        double queued = limit * (1 - (double)minRttNanos / rttNanos);
+        if (queued <= 3 * step) {
+            // Only grow if the limit is actually being used
+            if (inFlight + 1 >= (int)limit) {
+                limit = Math.min(maxLimit, limit + step);
+            }
+        }
+        else if (queued >= 6 * step) {
+            limit = Math.max(1, limit - step);
+        }
+    }
+}
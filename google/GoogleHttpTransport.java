@@ -0,0 +1,160 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HTTP transport used to talk to the Google REST endpoints.
+ * <p>
+ * The underlying {@link HttpClient} is shared through {@link SharedResources} by all transports
+ * created with the same connect timeout, so connections (and TLS sessions) are pooled across
+ * connector instances. Each transport must be closed when it is no longer used. HTTP/2 is
+ * preferred, which lets concurrent requests be multiplexed over a single connection.
+ */
+public class GoogleHttpTransport implements Closeable {
+    private final String clientKey;
+    private final HttpClient client;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Duration readTimeout;
+
+    /**
+     * @param connectTimeoutMs time to wait for a connection, 0 for no timeout.
+     * @param readTimeoutMs time to wait for a response once the request is sent, 0 for no timeout.
+     */
+    public GoogleHttpTransport(int connectTimeoutMs, int readTimeoutMs) {
+        int timeout = Math.max(0, connectTimeoutMs);
+        this.clientKey = Integer.toString(timeout);
+        this.client = SharedResources.acquire(HttpClient.class, clientKey, () -> createClient(timeout),
+                                              GoogleHttpTransport::closeClient);
+        this.readTimeout = (readTimeoutMs > 0) ? Duration.ofMillis(readTimeoutMs) : null;
+    }
+
+    private static HttpClient createClient(int connectTimeoutMs) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (connectTimeoutMs > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeoutMs));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Releases the client, which is closed once no transport uses it any more.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            SharedResources.release(HttpClient.class, clientKey);
+        }
+    }
+
+    private static void closeClient(HttpClient client) {
+        // HttpClient can only be closed from Java 21
+        if (client instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable)client).close();
+            }
+            catch (Exception e) {
+                // Nothing left to do with it anyway
+            }
+        }
+    }
+
+    public HttpResponse<InputStream> get(String url) throws IOException {
+        return send(newRequest(url).GET().build());
+    }
+
+    public HttpResponse<InputStream> postJson(String url, String json) throws IOException {
+        return send(newJsonPost(url, json));
+    }
+
+    public CompletableFuture<HttpResponse<String>> getAsync(String url) {
+        return client.sendAsync(newRequest(url).GET().build(), BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    public CompletableFuture<HttpResponse<String>> postJsonAsync(String url, String json) {
+        return client.sendAsync(newJsonPost(url, json), BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the delay requested by the Retry-After header of a response, given either in seconds or
+     * as an HTTP date.
+     * @return the delay in milliseconds, or -1 if there is no (valid) header.
+     */
+    public static long getRetryAfterMs(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        }
+        catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be a date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        }
+        catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private HttpRequest newJsonPost(String url, String json) {
+        return newRequest(url)
+                .header("Content-Type", "application/json; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private HttpRequest.Builder newRequest(String url) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url));
+        if (readTimeout != null) {
+            builder.timeout(readTimeout);
+        }
+        return builder;
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        try {
+            return client.send(request, BodyHandlers.ofInputStream());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.uri().getHost());
+        }
+    }
+}
@@ -18,6 +18,7 @@ package net.sf.okapi.connectors.google;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import net.sf.okapi.common.IParameters;
 import net.sf.okapi.connectors.google.v2.GoogleV2QueryBuilder;
@@ -36,6 +37,20 @@ public interface GoogleMTAPI {
     <T> List<TranslationResponse> translate(GoogleQueryBuilder<T> qb)
                 throws IOException, ParseException;
 
+    /**
+     * Asynchronous variant of {@link #translate(GoogleQueryBuilder)}, so that several batches can be
+     * in flight at once.  The default implementation performs the blocking call on the caller's thread.
+     * @return a future completed with the translations, or exceptionally with the error from the call
+     */
+    default <T> CompletableFuture<List<TranslationResponse>> translateAsync(GoogleQueryBuilder<T> qb) {
+        try {
+            return CompletableFuture.completedFuture(translate(qb));
+        }
+        catch (IOException | ParseException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Perform translation of oversized (> 2048 characters) segments.
      * @return the translation response
@@ -48,5 +63,18 @@ public interface GoogleMTAPI {
     List<String> getLanguages() throws IOException, ParseException;
     void setParameters (IParameters params);
 
+    /**
+     * Called when the connector is opened, to get ready for the first call, for instance by
+     * connecting in the background. Does nothing by default.
+     */
+    default void open() {
+    }
+
+    /**
+     * Called when the connector is closed, to release the connections. Does nothing by default.
+     */
+    default void close() {
+    }
+
 
 }
@@ -24,14 +24,21 @@ public class GoogleMTErrorException extends OkapiException {
 
 	private final int code;
     private final String message, domain, reason, query;
+    private final long retryAfterMs;
 
     public GoogleMTErrorException(int code, String message, String domain, String reason, String query) {
+        this(code, message, domain, reason, query, -1);
+    }
+
+    public GoogleMTErrorException(int code, String message, String domain, String reason, String query,
+                                  long retryAfterMs) {
         super(String.format("Error: response code %d - %s", code, message));
         this.code = code;
         this.message = message;
         this.domain = domain;
         this.reason = reason;
         this.query = query;
+        this.retryAfterMs = retryAfterMs;
     }
 
     public int getCode() {
@@ -53,4 +60,12 @@ public class GoogleMTErrorException extends OkapiException {
     public String getQuery() {
         return query;
     }
+
+    /**
+     * Gets the delay the server asked for before trying again (Retry-After).
+     * @return the delay in milliseconds, or -1 if the server didn't give one.
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
 }
@@ -30,10 +30,29 @@ public abstract class GoogleMTParameters extends StringParameters implements IEd
 	private static final String GLOSSARYID = "glossaryId";
 	private static final String RETRY_MS = "retryIntervalMs";
 	private static final String RETRY_COUNT = "retryCount";
+	private static final String MAX_RETRY_MS = "maxRetryIntervalMs";
 	private static final String FAILURES_BEFORE_ABORT = "failuresBeforeAbort";
 	private static final String USE_PBMT = "usePBMT";
-	private static final String inputUri = "gs://your-gcs-bucket/path/to/input/file.txt";
-	private static final String outputUri = "gs://your-gcs-bucket/path/to/results/";
+	private static final String CONNECT_TIMEOUT_MS = "connectTimeoutMs";
+	private static final String READ_TIMEOUT_MS = "readTimeoutMs";
+	private static final String MAX_CONCURRENT_BATCHES = "maxConcurrentBatches";
+	private static final String USE_VIRTUAL_THREADS = "useVirtualThreads";
+	private static final String ADAPTIVE_CONCURRENCY = "adaptiveConcurrency";
+	private static final String ASYNC_REQUESTS = "asyncRequests";
+	private static final String CACHE_SIZE = "cacheSize";
+	private static final String CACHE_FILE = "cacheFile";
+	private static final String CACHE_FILE_MAX_MB = "cacheFileMaxMb";
+	private static final String ADAPTIVE_BATCHING = "adaptiveBatching";
+	private static final String TARGET_LATENCY_MS = "targetLatencyMs";
+	private static final String COALESCE_WINDOW_MS = "coalesceWindowMs";
+	private static final String COALESCE_MAX_SIZE = "coalesceMaxSize";
+	private static final String HEDGE_PERCENTILE = "hedgePercentile";
+	private static final String HEDGE_BUDGET_PERCENT = "hedgeBudgetPercent";
+	private static final String CIRCUIT_BREAKER_WINDOW = "circuitBreakerWindow";
+	private static final String CIRCUIT_BREAKER_FAILURE_RATE = "circuitBreakerFailureRate";
+	private static final String CIRCUIT_BREAKER_OPEN_MS = "circuitBreakerOpenMs";
+	private static final String MAX_CHARS_PER_100S = "maxCharsPer100s";
+	private static final String MAX_REQUESTS_PER_100S = "maxRequestsPer100s";
 
 
 	public int getRetryIntervalMs () {
@@ -44,6 +63,15 @@ public abstract class GoogleMTParameters extends StringParameters implements IEd
 	    setInteger(RETRY_MS, retryMs);
 	}
 
+	public int getMaxRetryIntervalMs () {
+	    return getInteger(MAX_RETRY_MS);
+	}
+
+	// Upper bound of the backoff between retries, unless the server asks for a longer wait
+	public void setMaxRetryIntervalMs (int maxRetryMs) {
+	    setInteger(MAX_RETRY_MS, maxRetryMs);
+	}
+
 	public int getRetryCount () {
 	    return getInteger(RETRY_COUNT);
 	}
@@ -61,15 +89,223 @@ public abstract class GoogleMTParameters extends StringParameters implements IEd
 		setInteger(FAILURES_BEFORE_ABORT, failuresBeforeAbort);
 	}
 
+	public int getConnectTimeoutMs () {
+		return getInteger(CONNECT_TIMEOUT_MS);
+	}
+
+	// Use 0 for no timeout
+	public void setConnectTimeoutMs (int connectTimeoutMs) {
+		setInteger(CONNECT_TIMEOUT_MS, connectTimeoutMs);
+	}
+
+	public int getReadTimeoutMs () {
+		return getInteger(READ_TIMEOUT_MS);
+	}
+
+	// Use 0 for no timeout
+	public void setReadTimeoutMs (int readTimeoutMs) {
+		setInteger(READ_TIMEOUT_MS, readTimeoutMs);
+	}
+
+	public int getMaxConcurrentBatches () {
+		return getInteger(MAX_CONCURRENT_BATCHES);
+	}
+
+	// Use 1 to send the batches one after the other
+	public void setMaxConcurrentBatches (int maxConcurrentBatches) {
+		setInteger(MAX_CONCURRENT_BATCHES, maxConcurrentBatches);
+	}
+
+	public boolean getUseVirtualThreads () {
+		return getBoolean(USE_VIRTUAL_THREADS);
+	}
+
+	// Requires Java 21, ignored on older runtimes
+	public void setUseVirtualThreads (boolean useVirtualThreads) {
+		setBoolean(USE_VIRTUAL_THREADS, useVirtualThreads);
+	}
+
+	public boolean getAsyncRequests () {
+		return getBoolean(ASYNC_REQUESTS);
+	}
+
+	// v3 only: keep up to maxConcurrentBatches requests in flight without a thread waiting on each
+	public void setAsyncRequests (boolean asyncRequests) {
+		setBoolean(ASYNC_REQUESTS, asyncRequests);
+	}
+
+	public boolean getAdaptiveConcurrency () {
+		return getBoolean(ADAPTIVE_CONCURRENCY);
+	}
+
+	// Adjust the number of requests in flight, up to maxConcurrentBatches, to the response times
+	public void setAdaptiveConcurrency (boolean adaptiveConcurrency) {
+		setBoolean(ADAPTIVE_CONCURRENCY, adaptiveConcurrency);
+	}
+
+	public int getCacheSize () {
+		return getInteger(CACHE_SIZE);
+	}
+
+	// Use 0 for no cache
+	public void setCacheSize (int cacheSize) {
+		setInteger(CACHE_SIZE, cacheSize);
+	}
+
+	public String getCacheFile () {
+		return getString(CACHE_FILE);
+	}
+
+	// Use an empty path for no persistent cache
+	public void setCacheFile (String cacheFile) {
+		setString(CACHE_FILE, cacheFile);
+	}
+
+	public int getCacheFileMaxMb () {
+		return getInteger(CACHE_FILE_MAX_MB);
+	}
+
+	// Use 0 for no size limit
+	public void setCacheFileMaxMb (int cacheFileMaxMb) {
+		setInteger(CACHE_FILE_MAX_MB, cacheFileMaxMb);
+	}
+
+	public boolean getAdaptiveBatching () {
+		return getBoolean(ADAPTIVE_BATCHING);
+	}
+
+	// Adapt the size of the batches to the latency and errors of the service
+	public void setAdaptiveBatching (boolean adaptiveBatching) {
+		setBoolean(ADAPTIVE_BATCHING, adaptiveBatching);
+	}
+
+	public int getTargetLatencyMs () {
+		return getInteger(TARGET_LATENCY_MS);
+	}
+
+	// Latency above which adaptive batches are made smaller
+	public void setTargetLatencyMs (int targetLatencyMs) {
+		setInteger(TARGET_LATENCY_MS, targetLatencyMs);
+	}
+
+	public int getCoalesceWindowMs () {
+		return getInteger(COALESCE_WINDOW_MS);
+	}
+
+	// Time single queries wait for others to be sent with them in one batch, 0 for no waiting
+	public void setCoalesceWindowMs (int coalesceWindowMs) {
+		setInteger(COALESCE_WINDOW_MS, coalesceWindowMs);
+	}
+
+	public int getCoalesceMaxSize () {
+		return getInteger(COALESCE_MAX_SIZE);
+	}
+
+	// Number of waiting single queries at which they are sent without waiting any longer
+	public void setCoalesceMaxSize (int coalesceMaxSize) {
+		setInteger(COALESCE_MAX_SIZE, coalesceMaxSize);
+	}
+
+	public int getHedgePercentile () {
+		return getInteger(HEDGE_PERCENTILE);
+	}
+
+	// Percentile of the latencies after which a single query is sent again, 0 for never
+	public void setHedgePercentile (int hedgePercentile) {
+		setInteger(HEDGE_PERCENTILE, hedgePercentile);
+	}
+
+	public int getHedgeBudgetPercent () {
+		return getInteger(HEDGE_BUDGET_PERCENT);
+	}
+
+	// Largest number of queries sent again, as a percentage of the queries
+	public void setHedgeBudgetPercent (int hedgeBudgetPercent) {
+		setInteger(HEDGE_BUDGET_PERCENT, hedgeBudgetPercent);
+	}
+
+	public int getCircuitBreakerWindow () {
+		return getInteger(CIRCUIT_BREAKER_WINDOW);
+	}
+
+	// Number of calls the failure rate is computed on, 0 for no circuit breaker
+	public void setCircuitBreakerWindow (int circuitBreakerWindow) {
+		setInteger(CIRCUIT_BREAKER_WINDOW, circuitBreakerWindow);
+	}
+
+	public int getCircuitBreakerFailureRate () {
+		return getInteger(CIRCUIT_BREAKER_FAILURE_RATE);
+	}
+
+	// Percentage of failed calls at which calls are suspended
+	public void setCircuitBreakerFailureRate (int circuitBreakerFailureRate) {
+		setInteger(CIRCUIT_BREAKER_FAILURE_RATE, circuitBreakerFailureRate);
+	}
+
+	public int getCircuitBreakerOpenMs () {
+		return getInteger(CIRCUIT_BREAKER_OPEN_MS);
+	}
+
+	// Time calls are suspended for before trying again
+	public void setCircuitBreakerOpenMs (int circuitBreakerOpenMs) {
+		setInteger(CIRCUIT_BREAKER_OPEN_MS, circuitBreakerOpenMs);
+	}
+
+	public int getMaxCharsPer100s () {
+		return getInteger(MAX_CHARS_PER_100S);
+	}
+
+	// Use 0 for no limit. Best set a little under the quota of the project.
+	public void setMaxCharsPer100s (int maxCharsPer100s) {
+		setInteger(MAX_CHARS_PER_100S, maxCharsPer100s);
+	}
+
+	public int getMaxRequestsPer100s () {
+		return getInteger(MAX_REQUESTS_PER_100S);
+	}
+
+	// Use 0 for no limit
+	public void setMaxRequestsPer100s (int maxRequestsPer100s) {
+		setInteger(MAX_REQUESTS_PER_100S, maxRequestsPer100s);
+	}
+
+	/**
+	 * Identifies the model the translations are made with, so that cached translations
+	 * are not shared between different models.
+	 */
+	public abstract String getModelKey ();
+
 	@Override
 	public void reset () {
 		super.reset();
 		// The most likely error we will encounter is the rate limit of 100k
-		// characters translated per 100 seconds.  We will retry every 10s
-		// up to 10x, which is enough to flush the rate limit.
+		// characters translated per 100 seconds.  We will retry after 10s,
+		// backing off up to 60s between tries, up to 10x, which is enough
+		// to flush the rate limit.
 		setRetryIntervalMs(10 * 1000);
+		setMaxRetryIntervalMs(60 * 1000);
 		setRetryCount(10);
 		setFailuresBeforeAbort(-1);
+		setConnectTimeoutMs(10 * 1000);
+		setReadTimeoutMs(60 * 1000);
+		setMaxConcurrentBatches(1);
+		setUseVirtualThreads(false);
+		setAsyncRequests(false);
+		setAdaptiveConcurrency(false);
+		setCacheSize(0);
+		setCacheFile("");
+		setCacheFileMaxMb(0);
+		setAdaptiveBatching(false);
+		setTargetLatencyMs(5 * 1000);
+		setCoalesceWindowMs(0);
+		setCoalesceMaxSize(100);
+		setHedgePercentile(0);
+		setHedgeBudgetPercent(5);
+		setCircuitBreakerWindow(0);
+		setCircuitBreakerFailureRate(50);
+		setCircuitBreakerOpenMs(30 * 1000);
+		setMaxCharsPer100s(0);
+		setMaxRequestsPer100s(0);
 	}
 
 	@Override
@@ -33,8 +33,20 @@ public abstract class GoogleQueryBuilder<T> {
 
     public abstract String getQuery();
 
+    /**
+     * Indicates if a text can be added to this query.
+     */
+    public abstract boolean hasCapacity(String sourceText);
+
     public abstract void addQuery(String sourceText, T source);
 
+    /**
+     * Sets limits on the size of the query, below the ones of the API.
+     * @param sizeLimit the largest number of characters.
+     * @param countLimit the largest number of texts.
+     */
+    public abstract void setLimits(int sizeLimit, int countLimit);
+
     public List<String> getSourceTexts() {
         return sourceTexts;
     }
@@ -44,6 +56,16 @@ public abstract class GoogleQueryBuilder<T> {
     public int getSourceCount() {
         return sourceTexts.size();
     }
+    /**
+     * Gets the number of characters to translate, as counted against the quota.
+     */
+    public int getCharacterCount() {
+        int count = 0;
+        for (String text : sourceTexts) {
+            count += text.length();
+        }
+        return count;
+    }
 
     public String getTargetCode() { return tgtCode; }
     public String getSourceCode() { return srcCode; }
@@ -26,55 +26,132 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+/**
+ * Parses the JSON responses of the v2 API.
+ * <p>
+ * The parser keeps no state between calls: each response is read with its own reader (and
+ * json-simple parser, for errors), so a single instance can be shared by several threads.
+ */
 public class GoogleResponseParser {
-    private JSONParser parser = new JSONParser();
 
     public List<String> parseResponse(Reader r) throws IOException, ParseException {
-        return parseArrayResponse(r, "translations", "translatedText");
+        return parseArrayResponse(r, "translations", "translatedText", 0);
+    }
+
+    /**
+     * Parses a translation response.
+     * @param expectedCount number of translations expected, used to size the result.
+     */
+    public List<String> parseResponse(Reader r, int expectedCount) throws IOException, ParseException {
+        return parseArrayResponse(r, "translations", "translatedText", expectedCount);
     }
 
     public List<String> parseLanguagesResponse(Reader r) throws IOException, ParseException {
-        return parseArrayResponse(r, "languages", "language");
+        return parseArrayResponse(r, "languages", "language", 0);
     }
 
     protected List<String> parseArrayResponse(Reader r, String arrayName, String arrayKey)
                                 throws IOException, ParseException {
-        JSONObject json = (JSONObject)parser.parse(r);
-        JSONArray array = requireArray(require(json, "data"), arrayName);
-        List<String> values = new ArrayList<>();
-        for (Object o : array) {
-            if (o instanceof JSONObject) {
-                values.add(unescapeTranslation(requireString((JSONObject)o, arrayKey)));
+        return parseArrayResponse(r, arrayName, arrayKey, 0);
+    }
+
+    /**
+     * Extracts the string values of data.arrayName[*].arrayKey, streaming through the response
+     * rather than building a tree of it.
+     */
+    protected List<String> parseArrayResponse(Reader r, String arrayName, String arrayKey, int expectedCount)
+                                throws IOException, ParseException {
+        JsonPullReader json = new JsonPullReader(r);
+        List<String> values = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("data".equals(json.nextName()) && json.peek() == JsonPullReader.Token.BEGIN_OBJECT) {
+                values = parseDataObject(json, arrayName, arrayKey, expectedCount);
+            }
+            else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        json.endDocument();
+        if (values == null) {
+            throw new IllegalArgumentException("JSON didn't contain expected object data");
+        }
+        return values;
+    }
+
+    private List<String> parseDataObject(JsonPullReader json, String arrayName, String arrayKey, int expectedCount)
+                                throws IOException, ParseException {
+        List<String> values = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (arrayName.equals(json.nextName()) && json.peek() == JsonPullReader.Token.BEGIN_ARRAY) {
+                values = new ArrayList<>(Math.max(expectedCount, 10));
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (json.peek() == JsonPullReader.Token.BEGIN_OBJECT) {
+                        values.add(HtmlEntities.decode(parseArrayEntry(json, arrayKey)));
+                    }
+                    else {
+                        json.skipValue();
+                    }
+                }
+                json.endArray();
             }
+            else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        if (values == null) {
+            throw new IllegalArgumentException("JSON didn't contain expected array " + arrayName);
         }
         return values;
     }
 
+    private String parseArrayEntry(JsonPullReader json, String key) throws IOException, ParseException {
+        String value = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (key.equals(json.nextName()) && json.peek() == JsonPullReader.Token.STRING) {
+                value = json.nextString();
+            }
+            else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        if (value == null) {
+            throw new IllegalArgumentException("JSON didn't contain expected object " + key);
+        }
+        return value;
+    }
+
     public GoogleMTErrorException parseError(int code, String s, String query) throws IOException, ParseException {
+        return parseError(code, s, query, -1);
+    }
+
+    /**
+     * Parses an error response.
+     * @param retryAfterMs the delay given by the Retry-After header, in milliseconds, or -1.
+     */
+    public GoogleMTErrorException parseError(int code, String s, String query, long retryAfterMs)
+                throws IOException, ParseException {
         try {
-            JSONObject json = (JSONObject)parser.parse(s);
+            JSONObject json = (JSONObject)new JSONParser().parse(s);
             json = require(json, "error");
             JSONObject inner = (JSONObject)requireArray(json, "errors").get(0);
             // There may still be more we could be scraping here
             return new GoogleMTErrorException((int)requireLong(json, "code"), requireString(inner, "message"),
-                    requireString(inner, "domain"), requireString(inner, "reason"), query);
+                    requireString(inner, "domain"), requireString(inner, "reason"), query, retryAfterMs);
         }
         catch (Exception e) {
             // For certain types of 400 errors, Google will respond with an HTML page.
-            return new GoogleMTErrorException(code, "Google returned non-JSON error: " + s, "", "", query);
+            return new GoogleMTErrorException(code, "Google returned non-JSON error: " + s, "", "", query,
+                    retryAfterMs);
         }
     }
 
-    // Google seems to assume the content type is HTML, and returns &, <, >, ", using named entities,
-    // and ' as &#39;.  Other characters are returned using JSON's normal unicode escape mechanism.
-    private String unescapeTranslation(String text) {
-        text = text.replace("&#39;", "'");
-        text = text.replace("&lt;", "<");
-        text = text.replace("&gt;", ">");
-        text = text.replace("&quot;", "\"");
-        return text.replace("&amp;", "&");
-    }
-
     private JSONObject require(JSONObject json, String key) {
         Object o = json.get(key);
         if (o == null || !(o instanceof JSONObject)) {
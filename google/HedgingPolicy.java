@@ -0,0 +1,183 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+
+package net.sf.okapi.connectors.google;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second copy of a request that is taking longer than most, and takes whichever answers
+ * first, so that an occasional slow response from Google doesn't hold the caller.
+ * <p>
+ * The delay before the copy is sent is a percentile of the latencies of the last requests: with the
+ * 95th percentile, about one request in twenty gets a copy. No copy is sent until enough latencies
+ * are known. The copies sent are also capped by a budget, a percentage of the requests made, so
+ * that a general slowdown of the service doesn't double the quota used.
+ */
+public class HedgingPolicy {
+    private static final int WINDOW_SIZE = 200;
+    private static final int MIN_SAMPLES = 20;
+
+    private volatile int percentile;
+    private volatile int budgetPercent;
+    // Ring buffer of the last latencies, in milliseconds
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private int latencyPos, latencyCount;
+    private long requestCount, hedgeCount;
+
+    /**
+     * @param percentile percentile of the latencies after which a copy is sent.
+     * @param budgetPercent largest number of copies, as a percentage of the requests.
+     */
+    public HedgingPolicy(int percentile, int budgetPercent) {
+        configure(percentile, budgetPercent);
+    }
+
+    public void configure(int percentile, int budgetPercent) {
+        this.percentile = Math.max(1, Math.min(100, percentile));
+        this.budgetPercent = Math.max(0, budgetPercent);
+    }
+
+    /**
+     * Gets the time after which a copy of a request is sent.
+     * @return the delay in milliseconds, or -1 if not enough latencies are known yet.
+     */
+    public synchronized long getDelayMs() {
+        if (latencyCount < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int)Math.ceil(percentile / 100.0 * latencyCount) - 1;
+        return sorted[Math.max(0, Math.min(latencyCount - 1, index))];
+    }
+
+    /**
+     * Gets the number of copies sent so far.
+     */
+    public synchronized long getHedgeCount() {
+        return hedgeCount;
+    }
+
+    /**
+     * Sends a request, and a copy of it if it is slow to answer.
+     * @param request sends the request. A request fails by completing exceptionally or with null.
+     * @param hedge sends the copy.
+     * @return the result of the first of them to succeed, or the outcome of the last one to fail if
+     *         both fail.
+     */
+    public <R> CompletableFuture<R> send(Supplier<CompletableFuture<R>> request,
+                                         Supplier<CompletableFuture<R>> hedge) {
+        long delayMs;
+        synchronized (this) {
+            requestCount++;
+            delayMs = getDelayMs();
+        }
+        CompletableFuture<R> result = new CompletableFuture<>();
+        // Number of copies sent and not failed yet: the result only fails when none is left
+        AtomicInteger running = new AtomicInteger(1);
+        long start = System.nanoTime();
+        CompletableFuture<R> sent;
+        try {
+            sent = request.get();
+        }
+        catch (Throwable e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        // Whichever way the result goes, the other copy is no longer needed: cancelling it stops its
+        // retries, and keeps a late failure from counting against the job
+        CompletableFuture<R> primary = sent;
+        result.whenComplete((value, e) -> primary.cancel(false));
+        sent.whenComplete((value, e) -> {
+            if (e == null && value != null) {
+                // Only the first copy gives the latencies, a copy would make them look shorter
+                record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            settle(result, running, value, e);
+        });
+        if (delayMs >= 0) {
+            RequestExecutor.delayedExecutor(delayMs).execute(() -> {
+                if (result.isDone() || !tryAcquireHedge()) {
+                    return;
+                }
+                // The first copy may fail at any time and settle the result when it sees no other
+                // copy running, so the copy only counts as running if that hasn't happened yet
+                int count;
+                do {
+                    count = running.get();
+                    if (count == 0 || result.isDone()) {
+                        releaseHedge();
+                        return;
+                    }
+                } while (!running.compareAndSet(count, count + 1));
+                CompletableFuture<R> copy;
+                try {
+                    copy = hedge.get();
+                }
+                catch (Throwable e) {
+                    copy = CompletableFuture.failedFuture(e);
+                }
+                CompletableFuture<R> hedged = copy;
+                result.whenComplete((value, e) -> hedged.cancel(false));
+                copy.whenComplete((value, e) -> settle(result, running, value, e));
+            });
+        }
+        return result;
+    }
+
+    private synchronized boolean tryAcquireHedge() {
+        if ((hedgeCount + 1) * 100 > budgetPercent * requestCount) {
+            return false;
+        }
+        hedgeCount++;
+        return true;
+    }
+
+    private synchronized void releaseHedge() {
+        hedgeCount--;
+    }
+
+    private synchronized void record(long latencyMs) {
+        latencies[latencyPos] = latencyMs;
+        latencyPos = (latencyPos + 1) % WINDOW_SIZE;
+        if (latencyCount < WINDOW_SIZE) {
+            latencyCount++;
+        }
+    }
+
+    /**
+     * Takes the outcome of one of the copies: the first success is the result, and a failure only
+     * becomes the result when there is no other copy left to wait for.
+     */
+    private static <R> void settle(CompletableFuture<R> result, AtomicInteger running, R value, Throwable e) {
+        if (e == null && value != null) {
+            result.complete(value);
+        }
+        else if (running.decrementAndGet() == 0) {
+            if (e != null) {
+                result.completeExceptionally(e);
+            }
+            else {
+                result.complete(null);
+            }
+        }
+    }
+}
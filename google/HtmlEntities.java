@@ -0,0 +1,95 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+/**
+ * Decodes the HTML entities found in Google translations.
+ */
+public final class HtmlEntities {
+    // Longest entity we decode, "&#x10FFFF;"
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    private HtmlEntities() {
+    }
+
+    /**
+     * Replaces the named entities for &amp;, &lt;, &gt;, &quot; and &apos;, as well as decimal and
+     * hexadecimal character references, in a single pass. Anything else is left untouched.
+     * @return the decoded text, or the text itself if it contains no entity.
+     */
+    public static String decode(String text) {
+        int amp = text.indexOf('&');
+        if (amp < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        int last = 0;
+        while (amp >= 0) {
+            int semi = text.indexOf(';', amp + 1);
+            if (semi < 0) {
+                break;
+            }
+            int cp = (semi - amp <= MAX_ENTITY_LENGTH) ? decodeEntity(text, amp + 1, semi) : -1;
+            if (cp >= 0) {
+                sb.append(text, last, amp).appendCodePoint(cp);
+                last = semi + 1;
+                amp = text.indexOf('&', last);
+            }
+            else {
+                amp = text.indexOf('&', amp + 1);
+            }
+        }
+        return sb.append(text, last, text.length()).toString();
+    }
+
+    private static int decodeEntity(String text, int start, int end) {
+        if (start < end && text.charAt(start) == '#') {
+            int radix = 10;
+            start++;
+            if (start < end && (text.charAt(start) == 'x' || text.charAt(start) == 'X')) {
+                radix = 16;
+                start++;
+            }
+            if (start == end) {
+                return -1;
+            }
+            int cp = 0;
+            for (int i = start; i < end; i++) {
+                int digit = Character.digit(text.charAt(i), radix);
+                if (digit < 0) {
+                    return -1;
+                }
+                cp = cp * radix + digit;
+                if (cp > Character.MAX_CODE_POINT) {
+                    return -1;
+                }
+            }
+            return cp;
+        }
+        int length = end - start;
+        if (isNamed(text, start, length, "amp")) return '&';
+        if (isNamed(text, start, length, "lt")) return '<';
+        if (isNamed(text, start, length, "gt")) return '>';
+        if (isNamed(text, start, length, "quot")) return '"';
+        if (isNamed(text, start, length, "apos")) return '\'';
+        return -1;
+    }
+
+    private static boolean isNamed(String text, int start, int length, String name) {
+        return (length == name.length()) && text.startsWith(name, start);
+    }
+}
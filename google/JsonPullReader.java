@@ -0,0 +1,287 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Minimal pull tokenizer for JSON, reading straight from a {@link Reader} without building a tree.
+ * Only what is needed to walk the Google responses is supported: objects, arrays, strings, and
+ * skipping over any other value.
+ */
+final class JsonPullReader {
+    enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, LITERAL, END_DOCUMENT }
+
+    private static final Pattern NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    private final Reader in;
+    private final char[] buf = new char[8192];
+    private final StringBuilder sb = new StringBuilder();
+    private int pos, limit;
+    // Number of characters read before the start of buf, for error reporting
+    private int offset;
+    // For each open object or array, whether a member has already been read from it
+    private boolean[] started = new boolean[16];
+    private int depth;
+
+    JsonPullReader(Reader in) {
+        this.in = in;
+    }
+
+    Token peek() throws IOException, ParseException {
+        switch (peekNonWhitespace()) {
+            case '{': return Token.BEGIN_OBJECT;
+            case '}': return Token.END_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case ']': return Token.END_ARRAY;
+            case '"': return Token.STRING;
+            case -1: return Token.END_DOCUMENT;
+            default: return Token.LITERAL;
+        }
+    }
+
+    void beginObject() throws IOException, ParseException {
+        expect('{');
+        push();
+    }
+
+    void endObject() throws IOException, ParseException {
+        expect('}');
+        depth--;
+    }
+
+    void beginArray() throws IOException, ParseException {
+        expect('[');
+        push();
+    }
+
+    void endArray() throws IOException, ParseException {
+        expect(']');
+        depth--;
+    }
+
+    /**
+     * Checks that nothing but whitespace follows the top-level value.
+     */
+    void endDocument() throws IOException, ParseException {
+        int c = peekNonWhitespace();
+        if (c != -1) {
+            throw error(c);
+        }
+    }
+
+    /**
+     * Indicates if the current object or array has another member, consuming the separating comma.
+     * Members must be separated by exactly one comma, and no comma may precede the closing bracket.
+     */
+    boolean hasNext() throws IOException, ParseException {
+        int c = peekNonWhitespace();
+        if (c == '}' || c == ']') {
+            return false;
+        }
+        if (started[depth - 1]) {
+            if (c != ',') {
+                throw error(c);
+            }
+            pos++;
+            c = peekNonWhitespace();
+        }
+        if (c == -1 || c == ',' || c == '}' || c == ']') {
+            throw error(c);
+        }
+        started[depth - 1] = true;
+        return true;
+    }
+
+    String nextName() throws IOException, ParseException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    String nextString() throws IOException, ParseException {
+        expect('"');
+        sb.setLength(0);
+        readString(true);
+        return sb.toString();
+    }
+
+    void skipValue() throws IOException, ParseException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case STRING:
+                pos++;
+                readString(false);
+                break;
+            case LITERAL:
+                skipLiteral();
+                break;
+            default:
+                throw error(peekNonWhitespace());
+        }
+    }
+
+    /**
+     * Skips a number, true, false or null.
+     */
+    private void skipLiteral() throws IOException, ParseException {
+        int start = offset + pos;
+        sb.setLength(0);
+        while (fill()) {
+            char c = buf[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || isWhitespace(c)) {
+                break;
+            }
+            sb.append(c);
+            pos++;
+        }
+        String literal = sb.toString();
+        if (!literal.equals("true") && !literal.equals("false") && !literal.equals("null")
+                && !NUMBER.matcher(literal).matches()) {
+            throw new ParseException(start, ParseException.ERROR_UNEXPECTED_TOKEN, literal);
+        }
+    }
+
+    private void push() {
+        if (depth == started.length) {
+            started = Arrays.copyOf(started, depth * 2);
+        }
+        started[depth++] = false;
+    }
+
+    private void readString(boolean keep) throws IOException, ParseException {
+        while (fill()) {
+            // Copy runs of plain characters in bulk
+            int start = pos;
+            while (pos < limit && buf[pos] != '"' && buf[pos] != '\\') {
+                pos++;
+            }
+            if (keep && pos > start) {
+                sb.append(buf, start, pos - start);
+            }
+            if (pos == limit) {
+                continue;
+            }
+            if (buf[pos++] == '"') {
+                return;
+            }
+            char escaped = nextChar();
+            switch (escaped) {
+                case 'b': escaped = '\b'; break;
+                case 'f': escaped = '\f'; break;
+                case 'n': escaped = '\n'; break;
+                case 'r': escaped = '\r'; break;
+                case 't': escaped = '\t'; break;
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(nextChar(), 16);
+                        if (digit < 0) {
+                            throw error(buf[pos - 1]);
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    escaped = (char)value;
+                    break;
+                case '"': case '\\': case '/':
+                    break;
+                default:
+                    throw error(escaped);
+            }
+            if (keep) {
+                sb.append(escaped);
+            }
+        }
+        throw error(-1);
+    }
+
+    private char nextChar() throws IOException, ParseException {
+        if (!fill()) {
+            throw error(-1);
+        }
+        return buf[pos++];
+    }
+
+    private void expect(char expected) throws IOException, ParseException {
+        int c = peekNonWhitespace();
+        if (c != expected) {
+            throw error(c);
+        }
+        pos++;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        while (fill()) {
+            char c = buf[pos];
+            if (!isWhitespace(c)) {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Makes sure there is at least one character available in the buffer.
+     * @return false at the end of the input.
+     */
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int n;
+        while ((n = in.read(buf)) == 0) {
+            // Keep reading
+        }
+        if (n < 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private ParseException error(int c) {
+        return new ParseException(offset + pos, ParseException.ERROR_UNEXPECTED_CHAR,
+                                  (c < 0) ? "end of input" : Character.valueOf((char)c));
+    }
+}
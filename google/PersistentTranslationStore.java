@@ -0,0 +1,515 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disk-backed store of translations that survives restarts.
+ * <p>
+ * Translations are appended to a log file, as records of
+ * <code>[key length][value length][key][value]</code> (lengths are ints, texts are UTF-8).
+ * A hash index mapping keys to log offsets is kept in a memory-mapped file next to the log
+ * (<code>&lt;log&gt;.idx</code>), using open addressing over 16-byte slots
+ * <code>[key hash][offset + 1]</code> after a 32-byte header
+ * <code>[magic][capacity][count][unused][log length]</code>. The index records the log length it
+ * covers: if the two disagree when the store is opened (for example after a crash), the index is
+ * rebuilt from the log.
+ * <p>
+ * Any number of threads can read at the same time; writes are exclusive. Within a JVM, stores are
+ * shared by path through {@link #open(String, long)}; across processes, a lock file makes sure only
+ * one process uses a store at a time.
+ * <p>
+ * Updating a key appends a new record, so the log keeps growing until {@link #compact()} rewrites it
+ * with only the live records. When a size cap is set, compaction also drops the oldest records to
+ * bring the log back well under the cap, and it is triggered automatically when the cap is exceeded.
+ */
+public class PersistentTranslationStore implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PersistentTranslationStore.class);
+
+    private static final long MAGIC = 0x4f6b61704d544331L; // "OkapMTC1"
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    // After compaction of a capped store, the log is brought back to this fraction of the cap
+    private static final double COMPACTED_FILL = 0.75;
+
+    private final Path logPath;
+    private final Path indexPath;
+    private final long maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final FileChannel lockChannel;
+
+    private FileChannel log;
+    private long logLength;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+
+    /**
+     * Opens (or creates) a store. Opening a path that is already open in this JVM returns the same
+     * store, and each call must be matched by a call to {@link #close()}.
+     * @param path path of the log file. The index and lock files are stored next to it.
+     * @param maxBytes maximum size of the log file, 0 for no limit. Ignored if the store is already open.
+     * @throws IOException if the store can't be opened, or is used by another process.
+     */
+    public static PersistentTranslationStore open(String path, long maxBytes) throws IOException {
+        Path logPath = Paths.get(path).toAbsolutePath().normalize();
+        return SharedResources.acquire(PersistentTranslationStore.class, logPath.toString(),
+                                       () -> new PersistentTranslationStore(logPath, maxBytes),
+                                       PersistentTranslationStore::dispose);
+    }
+
+    private PersistentTranslationStore(Path logPath, long maxBytes) throws IOException {
+        this.logPath = logPath;
+        this.indexPath = Paths.get(logPath + ".idx");
+        this.maxBytes = maxBytes;
+        Path parent = logPath.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        lockChannel = FileChannel.open(Paths.get(logPath + ".lock"), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE);
+        if (lockChannel.tryLock() == null) {
+            lockChannel.close();
+            throw new IOException("Translation store " + logPath + " is in use by another process");
+        }
+        try {
+            log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE);
+            logLength = log.size();
+            if (!openIndex()) {
+                LOG.info("Rebuilding the index of translation store {}", logPath);
+                rebuildIndex();
+            }
+        }
+        catch (IOException e) {
+            unmapIndex();
+            if (log != null) {
+                log.close();
+            }
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    public String get(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        lock.readLock().lock();
+        try {
+            long offset = find(keyBytes, hash);
+            return (offset < 0) ? null : readValue(offset, keyBytes.length);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, String value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        lock.writeLock().lock();
+        try {
+            long existing = find(keyBytes, hash);
+            if (existing >= 0 && value.equals(readValue(existing, keyBytes.length))) {
+                return;
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length);
+            record.putInt(keyBytes.length).putInt(valueBytes.length).put(keyBytes).put(valueBytes).flip();
+            long offset = logLength;
+            writeFully(log, record, offset);
+            logLength += record.capacity();
+            insert(hash, offset, existing);
+            index.putLong(24, logLength);
+            if (maxBytes > 0 && logLength > maxBytes) {
+                compactLocked();
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live records (and, if the store is capped, only the most
+     * recent ones that fit), then rebuilds the index.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            compactLocked();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getLogLength() {
+        lock.readLock().lock();
+        try {
+            return logLength;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the store. It is actually closed once all the users that opened it have closed it.
+     */
+    @Override
+    public void close() throws IOException {
+        SharedResources.release(PersistentTranslationStore.class, logPath.toString());
+    }
+
+    private void dispose() {
+        try {
+            closeFiles();
+        }
+        catch (IOException e) {
+            LOG.warn("Could not close the translation store {}: {}", logPath, e.getMessage());
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.force();
+                index = null;
+            }
+            if (indexChannel != null) {
+                indexChannel.close();
+                indexChannel = null;
+            }
+            if (log != null) {
+                log.force(false);
+                log.close();
+                log = null;
+            }
+            // Also releases the lock
+            lockChannel.close();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the log offset of the record for the key, or -1.
+     */
+    private long find(byte[] keyBytes, long hash) throws IOException {
+        int mask = capacity - 1;
+        for (int slot = (int)hash & mask; ; slot = (slot + 1) & mask) {
+            int pos = HEADER_SIZE + slot * SLOT_SIZE;
+            long stored = index.getLong(pos + 8);
+            if (stored == 0) {
+                return -1;
+            }
+            if (index.getLong(pos) == hash && keyMatches(stored - 1, keyBytes)) {
+                return stored - 1;
+            }
+        }
+    }
+
+    /**
+     * Points the slot of the key to a new offset, or adds a slot if the key is new.
+     */
+    private void insert(long hash, long offset, long previousOffset) throws IOException {
+        if (previousOffset < 0 && (count + 1) * 10L > capacity * 7L) {
+            resizeIndex(capacity * 2);
+        }
+        int mask = capacity - 1;
+        for (int slot = (int)hash & mask; ; slot = (slot + 1) & mask) {
+            int pos = HEADER_SIZE + slot * SLOT_SIZE;
+            long stored = index.getLong(pos + 8);
+            if (stored == 0 || stored - 1 == previousOffset) {
+                index.putLong(pos, hash);
+                index.putLong(pos + 8, offset + 1);
+                if (stored == 0) {
+                    index.putInt(12, ++count);
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean keyMatches(long offset, byte[] keyBytes) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(log, header, offset);
+        if (header.getInt(0) != keyBytes.length) {
+            return false;
+        }
+        ByteBuffer key = ByteBuffer.allocate(keyBytes.length);
+        readFully(log, key, offset + RECORD_HEADER_SIZE);
+        return ByteBuffer.wrap(keyBytes).equals(key.flip());
+    }
+
+    private String readValue(long offset, int keyLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(log, header, offset);
+        ByteBuffer value = ByteBuffer.allocate(header.getInt(4));
+        readFully(log, value, offset + RECORD_HEADER_SIZE + keyLength);
+        return new String(value.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps the existing index.
+     * @return false if there is no usable index for the current log.
+     */
+    private boolean openIndex() throws IOException {
+        if (!Files.exists(indexPath) || Files.size(indexPath) < HEADER_SIZE) {
+            return false;
+        }
+        mapIndex();
+        if (index.getLong(0) != MAGIC || index.getLong(24) != logLength
+                || Integer.bitCount(index.getInt(8)) != 1
+                || indexChannel.size() < HEADER_SIZE + (long)index.getInt(8) * SLOT_SIZE) {
+            unmapIndex();
+            return false;
+        }
+        capacity = index.getInt(8);
+        count = index.getInt(12);
+        return true;
+    }
+
+    /**
+     * Recreates the index by scanning the log. A truncated record at the end of the log (left by an
+     * interrupted write) is discarded.
+     */
+    private void rebuildIndex() throws IOException {
+        List<long[]> records = new ArrayList<>();
+        long valid = scanLog(records);
+        if (valid < logLength) {
+            LOG.warn("Discarding {} bytes of incomplete data at the end of {}", logLength - valid, logPath);
+            log.truncate(valid);
+            logLength = valid;
+        }
+        writeIndex(records);
+    }
+
+    /**
+     * Reads all the records of the log.
+     * @param records receives [offset, hash, record size] for each record.
+     * @return the length of the valid part of the log.
+     */
+    private long scanLog(List<long[]> records) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long offset = 0;
+        while (offset + RECORD_HEADER_SIZE <= logLength) {
+            header.clear();
+            readFully(log, header, offset);
+            int keyLength = header.getInt(0);
+            int valueLength = header.getInt(4);
+            long size = RECORD_HEADER_SIZE + (long)keyLength + valueLength;
+            if (keyLength < 0 || valueLength < 0 || offset + size > logLength) {
+                break;
+            }
+            ByteBuffer key = ByteBuffer.allocate(keyLength);
+            readFully(log, key, offset + RECORD_HEADER_SIZE);
+            records.add(new long[] { offset, hash(key.array()), size });
+            offset += size;
+        }
+        return offset;
+    }
+
+    /**
+     * Writes a fresh index for the given log records. Later records win over earlier ones.
+     */
+    private void writeIndex(List<long[]> records) throws IOException {
+        int newCapacity = INITIAL_CAPACITY;
+        while (records.size() * 10L > newCapacity * 7L) {
+            newCapacity <<= 1;
+        }
+        createIndex(newCapacity);
+        for (long[] record : records) {
+            insert(record[1], record[0], findForRebuild(record[1], record[0]));
+        }
+        index.putLong(24, logLength);
+        index.force();
+    }
+
+    /**
+     * During a rebuild, finds the offset of an earlier record with the same key as the record at
+     * the given offset, so that it gets replaced.
+     */
+    private long findForRebuild(long hash, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(log, header, offset);
+        ByteBuffer key = ByteBuffer.allocate(header.getInt(0));
+        readFully(log, key, offset + RECORD_HEADER_SIZE);
+        return find(key.array(), hash);
+    }
+
+    private void resizeIndex(int newCapacity) throws IOException {
+        List<long[]> slots = new ArrayList<>(count);
+        for (int slot = 0; slot < capacity; slot++) {
+            int pos = HEADER_SIZE + slot * SLOT_SIZE;
+            long stored = index.getLong(pos + 8);
+            if (stored != 0) {
+                slots.add(new long[] { index.getLong(pos), stored });
+            }
+        }
+        createIndex(newCapacity);
+        int mask = capacity - 1;
+        for (long[] entry : slots) {
+            for (int slot = (int)entry[0] & mask; ; slot = (slot + 1) & mask) {
+                int pos = HEADER_SIZE + slot * SLOT_SIZE;
+                if (index.getLong(pos + 8) == 0) {
+                    index.putLong(pos, entry[0]);
+                    index.putLong(pos + 8, entry[1]);
+                    break;
+                }
+            }
+        }
+        count = slots.size();
+        index.putInt(12, count);
+        index.putLong(24, logLength);
+        index.force();
+    }
+
+    private void compactLocked() throws IOException {
+        // Collect the live records, most recent last
+        List<long[]> live = new ArrayList<>(count);
+        List<long[]> all = new ArrayList<>();
+        scanLog(all);
+        for (long[] record : all) {
+            if (findForRebuild(record[1], record[0]) == record[0]) {
+                live.add(record);
+            }
+        }
+        int first = 0;
+        if (maxBytes > 0) {
+            long budget = (long)(maxBytes * COMPACTED_FILL);
+            long total = 0;
+            for (first = live.size(); first > 0 && total + live.get(first - 1)[2] <= budget; first--) {
+                total += live.get(first - 1)[2];
+            }
+        }
+        Path tmp = Paths.get(logPath + ".tmp");
+        List<long[]> kept = new ArrayList<>(live.size() - first);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (long[] record : live.subList(first, live.size())) {
+                ByteBuffer buffer = ByteBuffer.allocate((int)record[2]);
+                readFully(log, buffer, record[0]);
+                writeFully(out, buffer.flip(), position);
+                kept.add(new long[] { position, record[1], record[2] });
+                position += record[2];
+            }
+            out.force(false);
+        }
+        long before = logLength;
+        log.close();
+        Files.move(tmp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logLength = log.size();
+        writeIndex(kept);
+        LOG.info("Compacted translation store {} from {} to {} bytes ({} entries)", logPath, before, logLength, count);
+    }
+
+    private void mapIndex() throws IOException {
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+    }
+
+    /**
+     * Clears the index file and maps it with a new capacity. The file is rewritten in place rather
+     * than replaced, since some platforms don't allow replacing a file that is still mapped.
+     */
+    private void createIndex(int newCapacity) throws IOException {
+        unmapIndex();
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        int size = HEADER_SIZE + newCapacity * SLOT_SIZE;
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        // Until it is complete, the index doesn't match any log length
+        index.putLong(24, -1);
+        for (int pos = HEADER_SIZE; pos < size; pos += 8) {
+            index.putLong(pos, 0);
+        }
+        index.putLong(0, MAGIC);
+        index.putInt(8, newCapacity);
+        index.putInt(12, 0);
+        capacity = newCapacity;
+        count = 0;
+    }
+
+    private void unmapIndex() throws IOException {
+        index = null;
+        if (indexChannel != null) {
+            indexChannel.close();
+            indexChannel = null;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of translation store");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    // 64-bit FNV-1a; 0 is never returned so it can't be confused with an empty slot
+    private static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        return (h == 0) ? 1 : h;
+    }
+}
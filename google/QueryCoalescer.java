@@ -0,0 +1,143 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+
+package net.sf.okapi.connectors.google;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the single queries made by several threads at about the same time, and sends them as one
+ * batch.
+ * <p>
+ * The first query of a batch waits for the window to elapse, or for the batch to be full, whichever
+ * comes first. Then it closes the batch and sends it on its own thread, while the queries that
+ * joined the batch wait for its responses. Each query is thus delayed by the window at most, plus
+ * the time of the batch request, and no thread other than the callers' is needed.
+ */
+public class QueryCoalescer {
+
+    /**
+     * Translates a batch of texts.
+     */
+    @FunctionalInterface
+    public interface BatchTranslator {
+        /**
+         * @return one response per text, in the same order, with null for the texts that could not
+         *         be translated.
+         */
+        List<TranslationResponse> translate(List<String> texts);
+    }
+
+    private static final class Batch {
+        final List<String> texts = new ArrayList<>();
+        final CompletableFuture<List<TranslationResponse>> responses = new CompletableFuture<>();
+    }
+
+    private final BatchTranslator translator;
+    private volatile long windowMs;
+    private volatile int maxSize;
+    // The batch queries are currently joining, null if there is none
+    private Batch open;
+
+    /**
+     * @param windowMs longest time the first query of a batch waits for others.
+     * @param maxSize number of queries at which a batch is sent without waiting any longer.
+     */
+    public QueryCoalescer(BatchTranslator translator, long windowMs, int maxSize) {
+        this.translator = translator;
+        configure(windowMs, maxSize);
+    }
+
+    public void configure(long windowMs, int maxSize) {
+        this.windowMs = Math.max(0, windowMs);
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Translates a text as part of a batch, waiting for the batch to be sent and answered.
+     * @return the response, or null if the text could not be translated.
+     */
+    public TranslationResponse translate(String text) {
+        Batch batch;
+        int index;
+        boolean first;
+        synchronized (this) {
+            first = (open == null);
+            if (first) {
+                open = new Batch();
+            }
+            batch = open;
+            index = batch.texts.size();
+            batch.texts.add(text);
+            if (batch.texts.size() >= maxSize) {
+                // Full: wake up the first query so it sends the batch now
+                open = null;
+                notifyAll();
+            }
+        }
+        if (first) {
+            awaitClose(batch);
+            try {
+                batch.responses.complete(translator.translate(batch.texts));
+            }
+            catch (Throwable e) {
+                batch.responses.completeExceptionally(e);
+            }
+        }
+        try {
+            return batch.responses.join().get(index);
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until the batch is closed, either because it is full or because its window is over, and
+     * makes sure no more queries join it.
+     */
+    private synchronized void awaitClose(Batch batch) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+        try {
+            while (open == batch) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        catch (InterruptedException e) {
+            // Send what we have rather than leave the other queries waiting
+            Thread.currentThread().interrupt();
+        }
+        if (open == batch) {
+            open = null;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side rate limiter matching the Google quotas, which are expressed per 100 seconds.
+ * <p>
+ * Two token buckets are kept, one for characters and one for requests. Each starts full, holds at
+ * most one quota period worth of tokens, and refills continuously. Callers reserve what they need
+ * and then wait until the buckets have caught up, so waiting callers are served in order and the
+ * server never sees more than the configured rate. A request larger than the whole bucket is let
+ * through once the bucket is full.
+ * <p>
+ * The quotas apply to a project or API key, not to a connector instance, so the connectors share
+ * one limiter per credential through {@link SharedResources}.
+ */
+public class RateLimiter {
+    private static final long PERIOD_NANOS = TimeUnit.SECONDS.toNanos(100);
+
+    private final Bucket chars = new Bucket();
+    private final Bucket requests = new Bucket();
+
+    /**
+     * Sets the limits, keeping the tokens already accumulated if they still fit.
+     * @param maxCharsPer100s characters allowed per 100 seconds, 0 for no limit.
+     * @param maxRequestsPer100s requests allowed per 100 seconds, 0 for no limit.
+     */
+    public synchronized void setLimits(int maxCharsPer100s, int maxRequestsPer100s) {
+        long now = System.nanoTime();
+        chars.setCapacity(maxCharsPer100s, now);
+        requests.setCapacity(maxRequestsPer100s, now);
+    }
+
+    public synchronized boolean isLimited() {
+        return chars.capacity > 0 || requests.capacity > 0;
+    }
+
+    /**
+     * Waits until one request of the given number of characters can be sent.
+     */
+    public void acquire(int charCount) throws InterruptedException {
+        long waitNanos = reserve(charCount);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Reserves one request of the given number of characters without waiting, for callers that
+     * schedule the request rather than sleep.
+     * @return how long to wait before sending it, in nanoseconds.
+     */
+    public synchronized long reserve(int charCount) {
+        long now = System.nanoTime();
+        return Math.max(chars.reserve(charCount, now), requests.reserve(1, now));
+    }
+
+    private static final class Bucket {
+        double capacity;
+        double tokens;
+        long lastRefill;
+
+        void setCapacity(int capacity, long now) {
+            if (capacity == this.capacity) {
+                return;
+            }
+            boolean wasUnlimited = (this.capacity == 0);
+            refill(now);
+            this.capacity = Math.max(0, capacity);
+            // A bucket that was not limiting anything starts full
+            tokens = wasUnlimited ? this.capacity : Math.min(tokens, this.capacity);
+        }
+
+        /**
+         * Takes tokens, possibly going into debt.
+         * @return how long to wait, in nanoseconds, for the debt to be paid back.
+         */
+        long reserve(int cost, long now) {
+            if (capacity == 0) {
+                return 0;
+            }
+            refill(now);
+            tokens -= Math.min(cost, capacity);
+            return (tokens >= 0) ? 0 : (long)Math.ceil(-tokens * PERIOD_NANOS / capacity);
+        }
+
+        private void refill(long now) {
+            if (capacity > 0) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * capacity / PERIOD_NANOS);
+            }
+            lastRefill = now;
+        }
+    }
+}
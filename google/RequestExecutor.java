@@ -0,0 +1,498 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.okapi.common.exceptions.OkapiException;
+
+/**
+ * Sends the requests of a connector to Google, applying the rate limit and the {@link RetryPolicy}.
+ * <p>
+ * A request that still fails after all its attempts, or that fails with a permanent error, counts
+ * towards the <code>failuresBeforeAbort</code> parameter. Once that is exceeded, or as soon as an
+ * authentication error shows up, an {@link OkapiException} is thrown to stop the job.
+ * <p>
+ * When enabled with <code>circuitBreakerWindow</code>, a {@link CircuitBreaker} watches the
+ * transient failures of every attempt. While it is open, requests fail at once instead of going
+ * through all their retries, and are not counted towards <code>failuresBeforeAbort</code>.
+ */
+public class RequestExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestExecutor.class);
+    // Sends the attempts of asynchronous requests once their backoff or their turn under the limits
+    // comes. No task waits on it, so a few threads serve any number of pending requests.
+    private static final ExecutorService RETRY_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+        Thread t = new Thread(r, "google-mt-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * A single attempt at a request.
+     */
+    @FunctionalInterface
+    public interface Request<R> {
+        R send() throws IOException, ParseException;
+    }
+
+    /**
+     * A single attempt at a request that completes without holding the caller's thread.
+     */
+    @FunctionalInterface
+    public interface AsyncRequest<R> {
+        CompletableFuture<R> send();
+    }
+
+    /**
+     * Is told the outcome of each attempt, for instance to adapt the size of the requests.
+     */
+    public interface Listener {
+        void onSuccess(int charCount, long latencyMs);
+
+        void onFailure(int charCount, long latencyMs, RetryPolicy.Decision decision);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Supplier<RateLimiter> rateLimiter;
+    private final Supplier<ConcurrencyLimiter> concurrencyLimiter;
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(1, 100, 0);
+    private volatile GoogleMTParameters params;
+
+    /**
+     * @param params the parameters giving the retry settings.
+     * @param rateLimiter supplies the rate limiter to use before each attempt, or null for none.
+     */
+    public RequestExecutor(GoogleMTParameters params, Supplier<RateLimiter> rateLimiter) {
+        this(params, rateLimiter, null);
+    }
+
+    /**
+     * @param params the parameters giving the retry settings.
+     * @param rateLimiter supplies the rate limiter to use before each attempt, or null for none.
+     * @param concurrencyLimiter supplies the limiter of the requests in flight, or null for none.
+     */
+    public RequestExecutor(GoogleMTParameters params, Supplier<RateLimiter> rateLimiter,
+                           Supplier<ConcurrencyLimiter> concurrencyLimiter) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        setParameters(params);
+    }
+
+    public void setParameters(GoogleMTParameters params) {
+        this.params = params;
+    }
+
+    /**
+     * Gets the circuit breaker, for instance to listen to its state changes. It is only used when
+     * the <code>circuitBreakerWindow</code> parameter is set.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void resetFailures() {
+        failureCount.set(0);
+    }
+
+    public int getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Sends a request, retrying it as the policy allows.
+     * @param operation name of the operation, for logging.
+     * @param charCount number of characters sent by the request, for the rate limit.
+     * @return the result of the request, or null if it failed.
+     * @throws OkapiException if the job should be aborted.
+     */
+    public <R> R execute(String operation, int charCount, Request<R> request) {
+        return execute(operation, charCount, null, request);
+    }
+
+    /**
+     * Sends a request, retrying it as the policy allows.
+     * @param operation name of the operation, for logging.
+     * @param charCount number of characters sent by the request, for the rate limit.
+     * @param listener told the outcome of the attempts at this request only, in addition to the
+     *        listeners of the executor, or null for none.
+     * @return the result of the request, or null if it failed.
+     * @throws OkapiException if the job should be aborted.
+     */
+    public <R> R execute(String operation, int charCount, Listener listener, Request<R> request) {
+        GoogleMTParameters params = this.params;
+        RetryPolicy policy = new RetryPolicy(params.getRetryIntervalMs(), params.getMaxRetryIntervalMs());
+        int attempts = Math.max(1, params.getRetryCount());
+        CircuitBreaker breaker = getBreaker(params);
+        for (int attempt = 1; ; attempt++) {
+            if (breaker != null && !breaker.tryAcquire()) {
+                LOG.debug("{} - not sent, the circuit breaker is open", operation);
+                return null;
+            }
+            ConcurrencyLimiter limiter;
+            try {
+                throttle(charCount);
+                limiter = acquireSlot();
+            }
+            catch (OkapiException e) {
+                // Interrupted while waiting: give back the probe the breaker may have granted
+                if (breaker != null) {
+                    breaker.release();
+                }
+                throw e;
+            }
+            Throwable error;
+            long start = System.nanoTime();
+            try {
+                R result = request.send();
+                succeeded(charCount, start, limiter, breaker, listener);
+                return result;
+            }
+            catch (GoogleMTErrorException | IOException | ParseException e) {
+                error = e;
+            }
+            catch (Throwable e) {
+                throw crashed(e, limiter, breaker);
+            }
+            RetryPolicy.Decision decision = failed(operation, charCount, start, limiter, breaker, listener, policy,
+                                                   error);
+            if (decision == RetryPolicy.Decision.FAIL || attempt >= attempts) {
+                break;
+            }
+            backOff(operation, attempt, policy.getDelayMs(attempt, error));
+        }
+        countFailure(params);
+        return null;
+    }
+
+    /**
+     * Sends a request without holding the calling thread while it is in flight, retrying it as the
+     * policy allows. The retries are sent after their backoff from threads of the executor, not from
+     * the caller.
+     * <p>
+     * The rate limit and the concurrency limit are waited for without holding a thread either: an
+     * attempt is scheduled for when the rate limit allows it, and sent when the concurrency limiter
+     * hands it a slot. Callers bound how many requests they start, for instance with
+     * <code>maxConcurrentBatches</code>.
+     * @param operation name of the operation, for logging.
+     * @param charCount number of characters sent by the request, for the rate limit.
+     * @return a future completed with the result of the request, or null if it failed, or completed
+     *         exceptionally with an {@link OkapiException} if the job should be aborted. Cancelling it
+     *         stops the retries, and a failure coming back afterwards is not counted.
+     */
+    public <R> CompletableFuture<R> executeAsync(String operation, int charCount, AsyncRequest<R> request) {
+        return executeAsync(operation, charCount, null, request);
+    }
+
+    /**
+     * Sends a request without holding the calling thread while it is in flight, retrying it as the
+     * policy allows.
+     * @param listener told the outcome of the attempts at this request only, in addition to the
+     *        listeners of the executor, or null for none.
+     * @see #executeAsync(String, int, AsyncRequest)
+     */
+    public <R> CompletableFuture<R> executeAsync(String operation, int charCount, Listener listener,
+                                                 AsyncRequest<R> request) {
+        GoogleMTParameters params = this.params;
+        CompletableFuture<R> result = new CompletableFuture<>();
+        RetryPolicy policy = new RetryPolicy(params.getRetryIntervalMs(), params.getMaxRetryIntervalMs());
+        sendAsync(operation, charCount, request, listener, params, policy, getBreaker(params), 1, result);
+        return result;
+    }
+
+    private <R> void sendAsync(String operation, int charCount, AsyncRequest<R> request, Listener listener,
+                               GoogleMTParameters params, RetryPolicy policy, CircuitBreaker breaker,
+                               int attempt, CompletableFuture<R> result) {
+        if (result.isDone()) {
+            // Cancelled by the caller while waiting for the retry: nothing more to send
+            return;
+        }
+        if (breaker != null && !breaker.tryAcquire()) {
+            LOG.debug("{} - not sent, the circuit breaker is open", operation);
+            result.complete(null);
+            return;
+        }
+        // Neither limit holds a thread: the attempt is scheduled for when the rate limit allows it,
+        // and made when the concurrency limiter hands it a slot
+        Runnable send = () -> acquireSlotAsync(result, breaker, limiter -> sendAttempt(operation, charCount,
+                request, listener, params, policy, breaker, attempt, result, limiter));
+        long waitNanos = reserve(charCount);
+        if (waitNanos > 0) {
+            CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, RETRY_EXECUTOR).execute(send);
+        }
+        else {
+            send.run();
+        }
+    }
+
+    /**
+     * Gets a slot from the concurrency limiter without waiting for it, then makes the attempt.
+     * The breaker permit is given back if the caller stops waiting first.
+     */
+    private void acquireSlotAsync(CompletableFuture<?> result, CircuitBreaker breaker,
+                                  Consumer<ConcurrencyLimiter> attempt) {
+        ConcurrencyLimiter limiter = (concurrencyLimiter == null) ? null : concurrencyLimiter.get();
+        if (limiter == null) {
+            attempt.accept(null);
+            return;
+        }
+        CompletableFuture<Void> slot = limiter.acquireAsync();
+        if (slot.isDone()) {
+            attempt.accept(limiter);
+            return;
+        }
+        result.whenComplete((value, e) -> slot.cancel(false));
+        slot.whenCompleteAsync((value, e) -> {
+            if (e != null) {
+                released(null, breaker);
+            }
+            else {
+                attempt.accept(limiter);
+            }
+        }, RETRY_EXECUTOR);
+    }
+
+    private <R> void sendAttempt(String operation, int charCount, AsyncRequest<R> request, Listener listener,
+                                 GoogleMTParameters params, RetryPolicy policy, CircuitBreaker breaker,
+                                 int attempt, CompletableFuture<R> result, ConcurrencyLimiter limiter) {
+        if (result.isDone()) {
+            // Settled while waiting for the limits, for instance by the other copy of a hedged
+            // request: sending now would only be billed
+            released(limiter, breaker);
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<R> sent;
+        try {
+            sent = request.send();
+        }
+        catch (Throwable e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((value, e) -> {
+            if (e == null) {
+                succeeded(charCount, start, limiter, breaker, listener);
+                result.complete(value);
+                return;
+            }
+            if (result.isDone()) {
+                // The caller no longer wants the result: the failure is neither retried nor counted
+                released(limiter, breaker);
+                return;
+            }
+            Throwable error = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            if (!(error instanceof GoogleMTErrorException || error instanceof IOException
+                  || error instanceof ParseException)) {
+                result.completeExceptionally(crashed(error, limiter, breaker));
+                return;
+            }
+            try {
+                RetryPolicy.Decision decision = failed(operation, charCount, start, limiter, breaker, listener, policy,
+                                                       error);
+                if (decision == RetryPolicy.Decision.FAIL || attempt >= Math.max(1, params.getRetryCount())) {
+                    countFailure(params);
+                    result.complete(null);
+                    return;
+                }
+            }
+            catch (OkapiException abort) {
+                result.completeExceptionally(abort);
+                return;
+            }
+            long delayMs = policy.getDelayMs(attempt, error);
+            LOG.info("{} - retry {} (waiting {} ms)", operation, attempt, delayMs);
+            delayedExecutor(delayMs).execute(
+                    () -> sendAsync(operation, charCount, request, listener, params, policy, breaker, attempt + 1,
+                                    result));
+        });
+    }
+
+    /**
+     * Gets an executor running tasks after a delay, on threads that may block waiting for the
+     * limits.
+     */
+    static Executor delayedExecutor(long delayMs) {
+        return CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, RETRY_EXECUTOR);
+    }
+
+    private CircuitBreaker getBreaker(GoogleMTParameters params) {
+        if (params.getCircuitBreakerWindow() <= 0) {
+            return null;
+        }
+        circuitBreaker.configure(params.getCircuitBreakerWindow(), params.getCircuitBreakerFailureRate(),
+                                 params.getCircuitBreakerOpenMs());
+        return circuitBreaker;
+    }
+
+    private void succeeded(int charCount, long start, ConcurrencyLimiter limiter, CircuitBreaker breaker,
+                           Listener listener) {
+        if (limiter != null) {
+            limiter.release(System.nanoTime() - start, false);
+        }
+        if (breaker != null) {
+            breaker.onSuccess();
+        }
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        for (Listener l : listeners) {
+            l.onSuccess(charCount, latencyMs);
+        }
+        if (listener != null) {
+            listener.onSuccess(charCount, latencyMs);
+        }
+    }
+
+    /**
+     * Accounts for a failed attempt.
+     * @return what to do about it.
+     * @throws OkapiException if the job should be aborted.
+     */
+    private RetryPolicy.Decision failed(String operation, int charCount, long start, ConcurrencyLimiter limiter,
+                                        CircuitBreaker breaker, Listener listener, RetryPolicy policy,
+                                        Throwable error) {
+        if (error instanceof GoogleMTErrorException) {
+            GoogleMTErrorException e = (GoogleMTErrorException)error;
+            LOG.error("Error {} - {} for query {}", e.getCode(), e.getMessage(), e.getQuery());
+        }
+        else if (error instanceof IOException) {
+            LOG.error("{} - I/O error: {}", operation, error.getMessage());
+        }
+        else {
+            LOG.error("{} - {}", operation, error.getMessage());
+        }
+        RetryPolicy.Decision decision = policy.classify(error);
+        long rttNanos = System.nanoTime() - start;
+        if (limiter != null) {
+            limiter.release(rttNanos, decision == RetryPolicy.Decision.RETRY);
+        }
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(rttNanos);
+        for (Listener l : listeners) {
+            l.onFailure(charCount, latencyMs, decision);
+        }
+        if (listener != null) {
+            listener.onFailure(charCount, latencyMs, decision);
+        }
+        if (breaker != null) {
+            // Only transient errors tell that the server is in trouble
+            if (decision == RetryPolicy.Decision.RETRY) {
+                breaker.onFailure();
+            }
+            else {
+                breaker.onSuccess();
+            }
+        }
+        if (decision == RetryPolicy.Decision.ABORT) {
+            throw new OkapiException("Cannot use the MT server: " + error.getMessage(), error);
+        }
+        return decision;
+    }
+
+    private OkapiException crashed(Throwable e, ConcurrencyLimiter limiter, CircuitBreaker breaker) {
+        released(limiter, breaker);
+        return new OkapiException("Error querying the MT server: " + e.getMessage(), e);
+    }
+
+    /**
+     * Ends an attempt whose outcome tells nothing about the server.
+     */
+    private void released(ConcurrencyLimiter limiter, CircuitBreaker breaker) {
+        if (limiter != null) {
+            limiter.release();
+        }
+        if (breaker != null) {
+            breaker.release();
+        }
+    }
+
+    private void countFailure(GoogleMTParameters params) {
+        if (( params.getFailuresBeforeAbort() > -1 ) && ( failureCount.incrementAndGet() > params.getFailuresBeforeAbort() )) {
+            throw new OkapiException("Too many retry failures while querying the MT server.");
+        }
+    }
+
+    /**
+     * Reserves the request with the rate limiter.
+     * @return how long to wait before sending it, in nanoseconds.
+     */
+    private long reserve(int charCount) {
+        RateLimiter limiter = (rateLimiter == null) ? null : rateLimiter.get();
+        return (limiter == null) ? 0 : limiter.reserve(charCount);
+    }
+
+    private void throttle(int charCount) {
+        RateLimiter limiter = (rateLimiter == null) ? null : rateLimiter.get();
+        if (limiter == null) {
+            return;
+        }
+        try {
+            limiter.acquire(charCount);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OkapiException("Interrupted while waiting for the Google MT rate limit");
+        }
+    }
+
+    private ConcurrencyLimiter acquireSlot() {
+        ConcurrencyLimiter limiter = (concurrencyLimiter == null) ? null : concurrencyLimiter.get();
+        if (limiter == null) {
+            return null;
+        }
+        try {
+            limiter.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OkapiException("Interrupted while waiting to send a request to Google MT");
+        }
+        return limiter;
+    }
+
+    private void backOff(String operation, int retry, long delayMs) {
+        LOG.info("{} - retry {} (waiting {} ms)", operation, retry, delayMs);
+        try {
+            Thread.sleep(delayMs);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OkapiException("Interrupted while trying to contact Google MT");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides what to do when a request to Google fails, and how long to wait before trying again.
+ * <p>
+ * Errors are classified from the code and reason reported by Google:
+ * <ul>
+ * <li>rate limits (429 or a rate limit reason), server errors (5xx, 408) and I/O errors such as
+ * connection resets and timeouts are transient, and are retried;</li>
+ * <li>authentication and authorization errors (401, 403, invalid key) will fail every request in the
+ * same way, so the whole job is aborted;</li>
+ * <li>any other error (400 and the like) only concerns this request, which fails without retry.</li>
+ * </ul>
+ * Retries use exponential backoff with jitter: the n-th wait is drawn between half and all of
+ * <code>retryIntervalMs * 2^(n-1)</code>, capped at <code>maxRetryIntervalMs</code>. A longer delay
+ * requested by the server with Retry-After is always honoured.
+ */
+public class RetryPolicy {
+    public enum Decision { RETRY, FAIL, ABORT }
+
+    private static final Set<String> RATE_LIMIT_REASONS = new HashSet<>(Arrays.asList(
+            "rateLimitExceeded", "userRateLimitExceeded", "quotaExceeded", "backendError",
+            // gRPC codes, as reported by the v3 API
+            "RESOURCE_EXHAUSTED", "UNAVAILABLE", "ABORTED", "DEADLINE_EXCEEDED"));
+    private static final Set<String> AUTH_REASONS = new HashSet<>(Arrays.asList(
+            "keyInvalid", "keyExpired", "authError", "accessNotConfigured", "forbidden",
+            "UNAUTHENTICATED", "PERMISSION_DENIED"));
+
+    private final int retryIntervalMs;
+    private final int maxRetryIntervalMs;
+
+    public RetryPolicy(int retryIntervalMs, int maxRetryIntervalMs) {
+        this.retryIntervalMs = Math.max(0, retryIntervalMs);
+        this.maxRetryIntervalMs = Math.max(this.retryIntervalMs, maxRetryIntervalMs);
+    }
+
+    public Decision classify(Throwable e) {
+        if (e instanceof GoogleMTErrorException) {
+            return classify((GoogleMTErrorException)e);
+        }
+        if (e instanceof IOException) {
+            return Decision.RETRY;
+        }
+        return Decision.FAIL;
+    }
+
+    private Decision classify(GoogleMTErrorException e) {
+        int code = e.getCode();
+        String reason = e.getReason();
+        if (code == 429 || RATE_LIMIT_REASONS.contains(reason)) {
+            return Decision.RETRY;
+        }
+        if (code == 401 || code == 403 || AUTH_REASONS.contains(reason)) {
+            return Decision.ABORT;
+        }
+        if (code >= 500 || code == 408) {
+            return Decision.RETRY;
+        }
+        return Decision.FAIL;
+    }
+
+    /**
+     * Gets how long to wait before the given retry.
+     * @param retry the number of the retry, starting at 1.
+     * @param e the error of the previous attempt.
+     * @return the delay in milliseconds.
+     */
+    public long getDelayMs(int retry, Throwable e) {
+        long ceiling = retryIntervalMs;
+        for (int i = 1; i < retry && ceiling < maxRetryIntervalMs; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxRetryIntervalMs);
+        long delay = (ceiling / 2) + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        if (e instanceof GoogleMTErrorException) {
+            delay = Math.max(delay, ((GoogleMTErrorException)e).getRetryAfterMs());
+        }
+        return delay;
+    }
+}
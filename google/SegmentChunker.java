@@ -0,0 +1,202 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits texts too long for a single request into chunks that can be translated separately, and
+ * joins the translated chunks back.
+ * <p>
+ * Texts are the coded HTML made by <code>QueryUtil</code>, where inline codes are tags such as
+ * <code>&lt;span id='1'&gt;...&lt;/span&gt;</code> or <code>&lt;br id='2'/&gt;</code>. A chunk
+ * never ends inside a tag, inside an entity, or between the two halves of a surrogate pair. It
+ * avoids ending between an opening tag and its closing tag, so that each chunk is well-formed and the
+ * codes can be restored, unless there is no other way to keep the chunk within the limit, as for a
+ * paragraph wrapped in a single paired code. Within these constraints, chunks end preferably at the
+ * end of a sentence, then after a space, and only as a last resort anywhere else. A chunk keeps the
+ * whitespace that follows it, so the chunks put together give the original text.
+ */
+public final class SegmentChunker {
+    /**
+     * Length of the chunks long texts are split into: small enough for the chunks to be spread
+     * over several requests and translated in parallel.
+     */
+    public static final int DEFAULT_CHUNK_LENGTH = 5000;
+
+    private static final String TERMINATORS = ".!?\u2026";
+    // These end a sentence without needing a space after them
+    private static final String CJK_TERMINATORS = "\u3002\uff01\uff1f";
+    // Can follow the end of a sentence, like the quote in: He said "Yes." Then...
+    private static final String CLOSERS = "\"')]\u00bb\u201d\u2019";
+
+    private SegmentChunker() {
+    }
+
+    /**
+     * Splits a text into chunks of at most the given length, where possible. A chunk can only be
+     * longer if the text has no break point early enough, for instance a very long span of code.
+     */
+    public static List<String> split(String text, int maxLength) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > maxLength) {
+            int end = findBreak(text, start, start + maxLength);
+            chunks.add(text.substring(start, end));
+            start = end;
+        }
+        if (start < text.length() || chunks.isEmpty()) {
+            chunks.add(text.substring(start));
+        }
+        return chunks;
+    }
+
+    /**
+     * Joins translated chunks. Translations tend to lose the trailing whitespace, so each chunk gets
+     * the trailing whitespace of its source back.
+     */
+    public static String join(List<String> sourceChunks, List<String> translatedChunks) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sourceChunks.size(); i++) {
+            String source = sourceChunks.get(i);
+            String translated = translatedChunks.get(i);
+            sb.append(translated, 0, trimmedLength(translated))
+              .append(source, trimmedLength(source), source.length());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Joins the responses to the chunks of a text into the response for the whole text.
+     * @return the joined response, or null if any of the chunks has no response.
+     */
+    public static TranslationResponse joinResponses(String sourceText, List<String> sourceChunks,
+                                                    List<TranslationResponse> responses) {
+        List<String> translatedChunks = new ArrayList<>(responses.size());
+        for (TranslationResponse response : responses) {
+            if (response == null) {
+                return null;
+            }
+            translatedChunks.add(response.getTarget());
+        }
+        return new TranslationResponse(sourceText, join(sourceChunks, translatedChunks));
+    }
+
+    private static int trimmedLength(String s) {
+        int end = s.length();
+        while (end > 0 && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Finds where the chunk starting at start should end.
+     */
+    private static int findBreak(String text, int start, int limit) {
+        int sentenceBreak = -1, spaceBreak = -1, anyBreak = -1;
+        // Breaks inside a paired code, only used when there is none outside
+        int innerSentenceBreak = -1, innerSpaceBreak = -1, innerAnyBreak = -1;
+        boolean inTag = false, inEntity = false;
+        boolean closingTag = false;
+        int depth = 0;
+        char lastSignificant = 0;
+        for (int p = start + 1; p <= text.length(); p++) {
+            // Take in the character before p, then see if we can break at p
+            char c = text.charAt(p - 1);
+            if (inTag) {
+                if (c == '>') {
+                    inTag = false;
+                    if (closingTag) {
+                        depth = Math.max(0, depth - 1);
+                    }
+                    else if (text.charAt(p - 2) != '/') {
+                        depth++;
+                    }
+                }
+                continue;
+            }
+            if (inEntity) {
+                if (c == ';' || !(Character.isLetterOrDigit(c) || c == '#')) {
+                    inEntity = false;
+                }
+                else {
+                    continue;
+                }
+            }
+            if (c == '<') {
+                inTag = true;
+                closingTag = (p < text.length()) && (text.charAt(p) == '/');
+                continue;
+            }
+            if (c == '&') {
+                inEntity = true;
+                continue;
+            }
+            if (!Character.isWhitespace(c) && !(CLOSERS.indexOf(c) >= 0 && isTerminator(lastSignificant))) {
+                lastSignificant = c;
+            }
+            if (Character.isHighSurrogate(c) && p < text.length() && Character.isLowSurrogate(text.charAt(p))) {
+                continue;
+            }
+            if (p > limit) {
+                // We're past the limit: take the best break found so far, or else the first one
+                int best = best(sentenceBreak, spaceBreak, anyBreak);
+                if (best < 0) {
+                    best = best(innerSentenceBreak, innerSpaceBreak, innerAnyBreak);
+                }
+                if (best > 0) {
+                    return best;
+                }
+                if (depth == 0) {
+                    return p;
+                }
+                continue;
+            }
+            boolean endOfSpaces = Character.isWhitespace(c)
+                    && (p == text.length() || !Character.isWhitespace(text.charAt(p)));
+            boolean endOfSentence = CJK_TERMINATORS.indexOf(c) >= 0 || (endOfSpaces && isTerminator(lastSignificant));
+            if (depth > 0) {
+                if (endOfSentence) {
+                    innerSentenceBreak = p;
+                }
+                if (endOfSpaces) {
+                    innerSpaceBreak = p;
+                }
+                innerAnyBreak = p;
+                continue;
+            }
+            if (endOfSentence) {
+                sentenceBreak = p;
+            }
+            if (endOfSpaces) {
+                spaceBreak = p;
+            }
+            anyBreak = p;
+        }
+        return text.length();
+    }
+
+    private static int best(int sentenceBreak, int spaceBreak, int anyBreak) {
+        return (sentenceBreak > 0) ? sentenceBreak : (spaceBreak > 0) ? spaceBreak : anyBreak;
+    }
+
+    private static boolean isTerminator(char c) {
+        return TERMINATORS.indexOf(c) >= 0 || CJK_TERMINATORS.indexOf(c) >= 0;
+    }
+}
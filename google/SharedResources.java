@@ -0,0 +1,213 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the resources shared by the connector instances of the process: HTTP and gRPC
+ * clients, translation caches and their files, rate and concurrency limiters.
+ * <p>
+ * Resources are identified by their type and a key, typically made of the endpoint and the
+ * credentials they are used with. {@link #acquire(Class, String, Factory, Consumer)} creates a
+ * resource the first time it is asked for and counts the references to it;
+ * {@link #release(Class, String)} drops a reference and disposes of the resource once the last one
+ * is gone. Connectors hold their resources with a {@link Slot}, which follows the changes of the key
+ * when the parameters change.
+ */
+public final class SharedResources {
+    private static final Logger LOG = LoggerFactory.getLogger(SharedResources.class);
+    private static final Map<String, Entry> ENTRIES = new HashMap<>();
+
+    /**
+     * Creates a resource.
+     */
+    @FunctionalInterface
+    public interface Factory<R, E extends Exception> {
+        R create() throws E;
+    }
+
+    private static final class Entry {
+        // Completed once the resource is created, outside the lock of the registry
+        final CompletableFuture<Object> resource = new CompletableFuture<>();
+        final Consumer<Object> disposer;
+        int references;
+
+        Entry(Consumer<Object> disposer) {
+            this.disposer = disposer;
+        }
+    }
+
+    private SharedResources() {
+    }
+
+    /**
+     * Gets a resource, creating it if nobody holds it yet, and adds a reference to it.
+     * <p>
+     * The resource is created without holding up the other acquisitions, which can take long, for
+     * instance to get a token over the network. Callers asking for the same resource meanwhile wait
+     * for it, and fail the same way if it cannot be created.
+     * @param type the type of the resource.
+     * @param key what identifies the resource among the ones of its type.
+     * @param factory creates the resource.
+     * @param disposer called when the last reference is released, or null if there is nothing to do.
+     * @return the resource.
+     * @throws E if the resource cannot be created.
+     */
+    @SuppressWarnings("unchecked")
+    public static <R, E extends Exception> R acquire(Class<R> type, String key, Factory<R, E> factory,
+                                                     Consumer<? super R> disposer) throws E {
+        String id = idOf(type, key);
+        Entry entry;
+        boolean create;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.get(id);
+            create = (entry == null);
+            if (create) {
+                entry = new Entry((Consumer<Object>)disposer);
+                ENTRIES.put(id, entry);
+            }
+            entry.references++;
+        }
+        if (create) {
+            try {
+                entry.resource.complete(factory.create());
+            }
+            catch (Throwable e) {
+                forget(id, entry);
+                entry.resource.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return type.cast(entry.resource.join());
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            // Only the factory's own exceptions are left
+            throw (E)cause;
+        }
+    }
+
+    /**
+     * Drops an entry whose resource could not be created.
+     */
+    private static void forget(String id, Entry entry) {
+        synchronized (ENTRIES) {
+            if (ENTRIES.get(id) == entry) {
+                ENTRIES.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Releases a reference to a resource, disposing of it if it was the last one.
+     */
+    public static void release(Class<?> type, String key) {
+        Entry entry;
+        synchronized (ENTRIES) {
+            String id = idOf(type, key);
+            entry = ENTRIES.get(id);
+            if (entry == null || --entry.references > 0) {
+                return;
+            }
+            ENTRIES.remove(id);
+        }
+        if (entry.disposer != null) {
+            try {
+                entry.disposer.accept(entry.resource.join());
+            }
+            catch (RuntimeException e) {
+                LOG.warn("Could not dispose of {} {}: {}", type.getSimpleName(), key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the number of references to a resource, 0 if it is not held.
+     */
+    public static int getReferenceCount(Class<?> type, String key) {
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(idOf(type, key));
+            return (entry == null) ? 0 : entry.references;
+        }
+    }
+
+    private static String idOf(Class<?> type, String key) {
+        return type.getName() + '\u0001' + key;
+    }
+
+    /**
+     * Holds one reference to a shared resource whose key can change, for instance when it depends
+     * on the parameters: asking for a different key releases the resource held so far.
+     */
+    public static final class Slot<R> {
+        private final Class<R> type;
+        private String key;
+        private R resource;
+
+        public Slot(Class<R> type) {
+            this.type = type;
+        }
+
+        /**
+         * Gets the resource for a key, acquiring it if the slot holds none or holds another one.
+         */
+        public synchronized <E extends Exception> R get(String key, Factory<R, E> factory,
+                                                        Consumer<? super R> disposer) throws E {
+            if (resource != null && this.key.equals(key)) {
+                return resource;
+            }
+            R acquired = acquire(type, key, factory, disposer);
+            release();
+            this.key = key;
+            this.resource = acquired;
+            return acquired;
+        }
+
+        /**
+         * Gets the resource held, or null if there is none.
+         */
+        public synchronized R peek() {
+            return resource;
+        }
+
+        /**
+         * Releases the resource held, if any.
+         */
+        public synchronized void release() {
+            if (resource != null) {
+                resource = null;
+                SharedResources.release(type, key);
+                key = null;
+            }
+        }
+    }
+}
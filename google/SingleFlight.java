@@ -0,0 +1,84 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+
+package net.sf.okapi.connectors.google;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps track of the translations in flight, so that a text asked for again before its translation
+ * comes back is not sent (and billed) a second time: the later callers wait for the call already
+ * made and share its response.
+ * <p>
+ * Texts are identified by the same keys as in the {@link TranslationCache}. Once a call ends, its
+ * key is forgotten, the cache taking over. A failed call gives null to all the callers waiting for
+ * it, as it does to the caller that made it.
+ * <p>
+ * The connectors using the same credentials share one instance through {@link SharedResources}.
+ */
+public class SingleFlight {
+    private final ConcurrentHashMap<String, CompletableFuture<TranslationResponse>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * Starts a call for a key, unless there is already one in flight. A call started must be ended
+     * with {@link #finish(String, CompletableFuture, TranslationResponse)}, whatever happens.
+     * @param call the future to complete with the response, if the caller makes the call.
+     * @return null if the caller is to make the call, otherwise the future of the call in flight.
+     */
+    public CompletableFuture<TranslationResponse> start(String key, CompletableFuture<TranslationResponse> call) {
+        return calls.putIfAbsent(key, call);
+    }
+
+    /**
+     * Ends a call started with {@link #start(String, CompletableFuture)}, and hands its response to
+     * the callers waiting for it.
+     * @param response the response, or null if the call failed.
+     */
+    public void finish(String key, CompletableFuture<TranslationResponse> call, TranslationResponse response) {
+        calls.remove(key, call);
+        call.complete(response);
+    }
+
+    /**
+     * Makes a call for a key, or waits for the one in flight.
+     * @return the response, or null if the call failed.
+     */
+    public TranslationResponse run(String key, Supplier<TranslationResponse> translation) {
+        CompletableFuture<TranslationResponse> call = new CompletableFuture<>();
+        CompletableFuture<TranslationResponse> other = start(key, call);
+        if (other != null) {
+            return other.join();
+        }
+        TranslationResponse response = null;
+        try {
+            response = translation.get();
+        }
+        finally {
+            finish(key, call, response);
+        }
+        return response;
+    }
+
+    /**
+     * Gets the number of calls in flight.
+     */
+    public int size() {
+        return calls.size();
+    }
+}
@@ -0,0 +1,338 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded in-memory cache of translations.
+ * <p>
+ * Lookups go straight to a {@link ConcurrentHashMap} and never block. Insertions and evictions are
+ * serialized. When the cache is full, a few random entries are sampled and the least frequently used
+ * one is evicted, but only if the new entry has been requested more often: one-off texts do not push
+ * out the strings that keep coming back. Access frequencies are estimated with a small
+ * count-min sketch that is periodically halved, so old popularity fades.
+ * <p>
+ * A {@link PersistentTranslationStore} can be set as a second tier: translations are written through
+ * to it, and memory misses are looked up there. With a maximum size of 0 only the store is used.
+ */
+public class TranslationCache {
+    private static final Logger LOG = LoggerFactory.getLogger(TranslationCache.class);
+    private static final int SAMPLE_SIZE = 8;
+
+    private final int maximumSize;
+    private final ConcurrentHashMap<String, Entry> map;
+    // Keys of the entries, for random sampling. Guarded by the cache's lock.
+    private final List<String> keys;
+    // Null when nothing is kept in memory, as there is then nothing to admit or evict
+    private final FrequencySketch sketch;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong storeHitCount = new AtomicLong();
+    private volatile PersistentTranslationStore store;
+
+    private static final class Entry {
+        final TranslationResponse response;
+        int index;
+
+        Entry(TranslationResponse response, int index) {
+            this.response = response;
+            this.index = index;
+        }
+    }
+
+    /**
+     * @param maximumSize maximum number of translations kept in memory, 0 to only use a store.
+     */
+    public TranslationCache(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("The cache size cannot be negative");
+        }
+        this.maximumSize = maximumSize;
+        this.map = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.keys = new ArrayList<>(Math.min(maximumSize, 1 << 16));
+        this.sketch = (maximumSize == 0) ? null : new FrequencySketch(maximumSize);
+    }
+
+    public PersistentTranslationStore getStore() {
+        return store;
+    }
+
+    public void setStore(PersistentTranslationStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Builds the cache key of a text. Translations only match if they were made for the same language
+     * pair and with the same model.
+     */
+    public static String keyOf(String srcCode, String tgtCode, String model, String text) {
+        return new StringBuilder(srcCode.length() + tgtCode.length() + model.length() + text.length() + 3)
+                .append(srcCode).append('\u0001').append(tgtCode).append('\u0001')
+                .append(model).append('\u0001').append(text).toString();
+    }
+
+    public TranslationResponse get(String key) {
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+        Entry entry = map.get(key);
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return entry.response;
+        }
+        TranslationResponse response = getFromStore(key);
+        if (response != null) {
+            hitCount.incrementAndGet();
+            storeHitCount.incrementAndGet();
+            putInMemory(key, response);
+            return response;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, TranslationResponse response) {
+        putInMemory(key, response);
+        PersistentTranslationStore store = this.store;
+        if (store != null) {
+            try {
+                store.put(key, response.getTarget());
+            }
+            catch (IOException e) {
+                LOG.warn("Could not write to the translation store: {}", e.getMessage());
+            }
+        }
+    }
+
+    private TranslationResponse getFromStore(String key) {
+        PersistentTranslationStore store = this.store;
+        if (store == null) {
+            return null;
+        }
+        try {
+            String target = store.get(key);
+            return (target == null) ? null : new TranslationResponse(textOf(key), target);
+        }
+        catch (IOException e) {
+            LOG.warn("Could not read from the translation store: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // The source text is what follows the third separator of the key, see keyOf()
+    private static String textOf(String key) {
+        int start = 0;
+        for (int i = 0; i < 3; i++) {
+            start = key.indexOf('\u0001', start) + 1;
+        }
+        return key.substring(start);
+    }
+
+    private void putInMemory(String key, TranslationResponse response) {
+        if (maximumSize == 0) {
+            return;
+        }
+        synchronized (keys) {
+            Entry existing = map.get(key);
+            if (existing != null) {
+                map.put(key, new Entry(response, existing.index));
+                return;
+            }
+            if (keys.size() >= maximumSize) {
+                String victim = sampleVictim();
+                if (sketch.frequency(key) <= sketch.frequency(victim)) {
+                    // The newcomer is no more popular than the victim: keep the victim
+                    return;
+                }
+                remove(victim);
+                evictionCount.incrementAndGet();
+            }
+            keys.add(key);
+            map.put(key, new Entry(response, keys.size() - 1));
+        }
+    }
+
+    public void clear() {
+        synchronized (keys) {
+            keys.clear();
+            map.clear();
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Stats getStats() {
+        return new Stats(hitCount.get(), missCount.get(), evictionCount.get(), storeHitCount.get(), map.size());
+    }
+
+    private String sampleVictim() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String victim = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            String candidate = keys.get(random.nextInt(keys.size()));
+            int frequency = sketch.frequency(candidate);
+            if (frequency < victimFrequency) {
+                victim = candidate;
+                victimFrequency = frequency;
+            }
+        }
+        return victim;
+    }
+
+    private void remove(String key) {
+        Entry entry = map.remove(key);
+        // Move the last key into the freed slot
+        String last = keys.remove(keys.size() - 1);
+        if (entry.index < keys.size()) {
+            keys.set(entry.index, last);
+            map.get(last).index = entry.index;
+        }
+    }
+
+    /**
+     * Snapshot of the cache statistics.
+     */
+    public static class Stats {
+        private final long hitCount, missCount, evictionCount, storeHitCount;
+        private final int size;
+
+        public Stats(long hitCount, long missCount, long evictionCount, long storeHitCount, int size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.storeHitCount = storeHitCount;
+            this.size = size;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Number of hits (included in the hit count) that were answered by the persistent store.
+         */
+        public long getStoreHitCount() {
+            return storeHitCount;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long total = hitCount + missCount;
+            return (total == 0) ? 0 : (double)hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d (store=%d), misses=%d, evictions=%d, size=%d, hitRate=%.3f",
+                                 hitCount, storeHitCount, missCount, evictionCount, size, getHitRate());
+        }
+    }
+
+    /**
+     * Count-min sketch of 4 rows, with counters capped at 15 and halved every 10 x size increments.
+     * Counts are approximate: concurrent updates may occasionally be lost, which is fine for eviction.
+     */
+    private static final class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = { 0x97cb3127, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f };
+
+        private final AtomicIntegerArray table;
+        private final int mask;
+        private final int resetThreshold;
+        private final AtomicLong additions = new AtomicLong();
+
+        FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 24)) - 1) << 1;
+            table = new AtomicIntegerArray(width * SEEDS.length);
+            mask = width - 1;
+            resetThreshold = 10 * maximumSize;
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                frequency = Math.min(frequency, table.get(indexOf(hash, row)));
+            }
+            return frequency;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < SEEDS.length; row++) {
+                int i = indexOf(hash, row);
+                int count;
+                do {
+                    count = table.get(i);
+                } while (count < MAX_COUNT && !table.compareAndSet(i, count, count + 1));
+            }
+            if (additions.incrementAndGet() >= resetThreshold) {
+                halve();
+            }
+        }
+
+        private synchronized void halve() {
+            if (additions.get() < resetThreshold) {
+                return;
+            }
+            for (int i = 0; i < table.length(); i++) {
+                table.set(i, table.get(i) >>> 1);
+            }
+            additions.set(0);
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            return row * (mask + 1) + ((h ^ (h >>> 16)) & mask);
+        }
+
+        private static int spread(int h) {
+            h ^= (h >>> 17);
+            h *= 0xed5ad4bb;
+            return h ^ (h >>> 11);
+        }
+    }
+}
@@ -17,15 +17,19 @@
 package net.sf.okapi.connectors.google.v2;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import net.sf.okapi.common.IParameters;
+import net.sf.okapi.connectors.google.GoogleHttpTransport;
 import net.sf.okapi.connectors.google.GoogleMTAPI;
 import net.sf.okapi.connectors.google.GoogleResponseParser;
 import net.sf.okapi.connectors.google.GoogleQueryBuilder;
@@ -43,74 +47,97 @@ public class GoogleMTAPIImpl implements GoogleMTAPI {
     private final String baseUrl;
     private GoogleMTv2Parameters params;
     private GoogleResponseParser parser = new GoogleResponseParser();
+    private GoogleHttpTransport transport;
 
     public GoogleMTAPIImpl(String baseUrl, GoogleMTv2Parameters params) {
         this.baseUrl = baseUrl;
-        this.params = params;
+        setParameters(params);
     }
 
 
     @Override
     public List<String> getLanguages() throws IOException, ParseException {
-        URL url = new URL(baseUrl + "/languages?key=" + params.getApiKey());
-        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-        int code = conn.getResponseCode();
+        HttpResponse<InputStream> response = getTransport().get(baseUrl + "/languages?key=" + params.getApiKey());
+        int code = response.statusCode();
         if ( code == 200 ) {
-            return parser.parseLanguagesResponse(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
+            try (Reader r = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+                return parser.parseLanguagesResponse(r);
+            }
         }
         else {
-            String errorBody = StreamUtil.streamUtf8AsString(conn.getErrorStream());
-            throw parser.parseError(code, errorBody, null);
+            String errorBody = StreamUtil.streamUtf8AsString(response.body());
+            throw parser.parseError(code, errorBody, null, GoogleHttpTransport.getRetryAfterMs(response));
         }
     }
 
     @Override
     public <T> List<TranslationResponse> translate(GoogleQueryBuilder<T> qb) throws IOException, ParseException  {
-        URL url = new URL(qb.getQuery());
-        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-        int code = conn.getResponseCode();
+        HttpResponse<InputStream> response = isPost(qb) ?
+                getTransport().postJson(qb.getQuery(), ((GoogleV2QueryBuilder<T>)qb).getPostBody()) :
+                getTransport().get(qb.getQuery());
+        int code = response.statusCode();
         if ( code == 200 ) {
-            List<String> translatedTexts = 
-                    parser.parseResponse(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
-            List<TranslationResponse> responses = new ArrayList<>();
-            if (qb.getSourceCount() != translatedTexts.size()) {
-                LOG.error("Received {} translations for {} sources in query {}", translatedTexts.size(),
-                          qb.getSourceCount(), qb.getQuery());
-                throw new OkapiException("API returned incorrect number of translations (expected " +
-                          qb.getSourceCount() + ", got " + translatedTexts.size());
-            }
-            for (int i = 0; i < qb.getSourceCount(); i++) {
-                responses.add(new TranslationResponse(qb.getSourceTexts().get(i), translatedTexts.get(i)));
+            try (Reader r = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+                return toResponses(qb, parser.parseResponse(r, qb.getSourceCount()));
             }
-            return responses;
         }
         else {
-            String errorBody = StreamUtil.streamUtf8AsString(conn.getErrorStream());
-            throw parser.parseError(code, errorBody, qb.getQuery());
+            String errorBody = StreamUtil.streamUtf8AsString(response.body());
+            throw parser.parseError(code, errorBody, qb.getQuery(), GoogleHttpTransport.getRetryAfterMs(response));
         }
     }
 
+    @Override
+    public <T> CompletableFuture<List<TranslationResponse>> translateAsync(GoogleQueryBuilder<T> qb) {
+        CompletableFuture<HttpResponse<String>> future = isPost(qb) ?
+                getTransport().postJsonAsync(qb.getQuery(), ((GoogleV2QueryBuilder<T>)qb).getPostBody()) :
+                getTransport().getAsync(qb.getQuery());
+        return future.thenApply(response -> {
+            try {
+                if ( response.statusCode() == 200 ) {
+                    return toResponses(qb, parser.parseResponse(new StringReader(response.body()), qb.getSourceCount()));
+                }
+                throw parser.parseError(response.statusCode(), response.body(), qb.getQuery(),
+                                        GoogleHttpTransport.getRetryAfterMs(response));
+            }
+            catch (IOException | ParseException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static boolean isPost(GoogleQueryBuilder<?> qb) {
+        return (qb instanceof GoogleV2QueryBuilder) && ((GoogleV2QueryBuilder<?>)qb).isPost();
+    }
+
+    private <T> List<TranslationResponse> toResponses(GoogleQueryBuilder<T> qb, List<String> translatedTexts) {
+        if (qb.getSourceCount() != translatedTexts.size()) {
+            LOG.error("Received {} translations for {} sources in query {}", translatedTexts.size(),
+                      qb.getSourceCount(), qb.getQuery());
+            throw new OkapiException("API returned incorrect number of translations (expected " +
+                      qb.getSourceCount() + ", got " + translatedTexts.size());
+        }
+        List<TranslationResponse> responses = new ArrayList<>(translatedTexts.size());
+        for (int i = 0; i < qb.getSourceCount(); i++) {
+            responses.add(new TranslationResponse(qb.getSourceTexts().get(i), translatedTexts.get(i)));
+        }
+        return responses;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> TranslationResponse translateSingleSegment(GoogleQueryBuilder<T> qb, String sourceText)
                                             throws IOException, ParseException {
         LOG.debug("Using POST query for source '{}...' of length {}", sourceText.substring(0, 32), sourceText.length());
-        URL url = new URL(qb.getQuery());
-        HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-
         JSONObject json = new JSONObject();
         json.put("q", sourceText);
-        try (OutputStreamWriter w = new OutputStreamWriter(conn.getOutputStream(), StandardCharsets.UTF_8)) {
-            w.write(json.toJSONString());
-        }
-        GoogleResponseParser parser = new GoogleResponseParser();
-        int code = conn.getResponseCode();
+        HttpResponse<InputStream> response = getTransport().postJson(qb.getQuery(), json.toJSONString());
+        int code = response.statusCode();
         if ( code == 200 ) {
-            List<String> translatedTexts =
-                    parser.parseResponse(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
+            List<String> translatedTexts;
+            try (Reader r = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+                translatedTexts = parser.parseResponse(r);
+            }
             if (translatedTexts.size() != 1) {
                 LOG.error("Received {} translations for {} sources in POST query {} with body '{}'", translatedTexts.size(),
                           1, qb.getQuery(), sourceText);
@@ -120,13 +147,30 @@ public class GoogleMTAPIImpl implements GoogleMTAPI {
             return new TranslationResponse(sourceText, translatedTexts.get(0));
         }
         else {
-            String errorBody = StreamUtil.streamUtf8AsString(conn.getErrorStream());
-            throw parser.parseError(code, errorBody, qb.toString());
+            String errorBody = StreamUtil.streamUtf8AsString(response.body());
+            throw parser.parseError(code, errorBody, qb.toString(), GoogleHttpTransport.getRetryAfterMs(response));
         }
     }
 
-    public void setParameters (IParameters params) {
+    public synchronized void setParameters (IParameters params) {
         this.params = (GoogleMTv2Parameters)params;
+        // Set up again for the new timeouts on the next call
+        close();
+    }
+
+    @Override
+    public synchronized void close () {
+        if (transport != null) {
+            transport.close();
+            transport = null;
+        }
+    }
+
+    private synchronized GoogleHttpTransport getTransport () {
+        if (transport == null) {
+            transport = new GoogleHttpTransport(params.getConnectTimeoutMs(), params.getReadTimeoutMs());
+        }
+        return transport;
     }
 
 }
@@ -27,9 +27,30 @@ public class GoogleMTv2Parameters extends GoogleMTParameters {
 
 	private static final String APIKEY = "apiKey";
 	private static final String RETRY_MS = "retryIntervalMs";
+	private static final String MAX_RETRY_MS = "maxRetryIntervalMs";
 	private static final String RETRY_COUNT = "retryCount";
 	private static final String FAILURES_BEFORE_ABORT = "failuresBeforeAbort";
+	private static final String MAX_CONCURRENT_BATCHES = "maxConcurrentBatches";
+	private static final String USE_VIRTUAL_THREADS = "useVirtualThreads";
+	private static final String ADAPTIVE_CONCURRENCY = "adaptiveConcurrency";
+	private static final String CACHE_SIZE = "cacheSize";
+	private static final String CACHE_FILE = "cacheFile";
+	private static final String CACHE_FILE_MAX_MB = "cacheFileMaxMb";
+	private static final String ADAPTIVE_BATCHING = "adaptiveBatching";
+	private static final String TARGET_LATENCY_MS = "targetLatencyMs";
+	private static final String COALESCE_WINDOW_MS = "coalesceWindowMs";
+	private static final String COALESCE_MAX_SIZE = "coalesceMaxSize";
+	private static final String HEDGE_PERCENTILE = "hedgePercentile";
+	private static final String HEDGE_BUDGET_PERCENT = "hedgeBudgetPercent";
+	private static final String CIRCUIT_BREAKER_WINDOW = "circuitBreakerWindow";
+	private static final String CIRCUIT_BREAKER_FAILURE_RATE = "circuitBreakerFailureRate";
+	private static final String CIRCUIT_BREAKER_OPEN_MS = "circuitBreakerOpenMs";
+	private static final String MAX_CHARS_PER_100S = "maxCharsPer100s";
+	private static final String MAX_REQUESTS_PER_100S = "maxRequestsPer100s";
 	private static final String USE_PBMT = "usePBMT";
+	private static final String USE_BATCH_POST = "useBatchPost";
+	private static final String CONNECT_TIMEOUT_MS = "connectTimeoutMs";
+	private static final String READ_TIMEOUT_MS = "readTimeoutMs";
 
 	public String getApiKey () {
 		return getString(APIKEY).trim();
@@ -51,11 +72,25 @@ public class GoogleMTv2Parameters extends GoogleMTParameters {
 	}
 
 
+	public boolean getUseBatchPost () {
+	    return getBoolean(USE_BATCH_POST);
+	}
+
+	public void setUseBatchPost (boolean useBatchPost) {
+	    setBoolean(USE_BATCH_POST, useBatchPost);
+	}
+
+	@Override
+	public String getModelKey () {
+	    return getUsePBMT() ? "base" : "nmt";
+	}
+
 	@Override
 	public void reset () {
 		super.reset();
 		setApiKey("");
 		setUsePBMT(false);
+		setUseBatchPost(true);
 		// The most likely error we will encounter is the rate limit of 100k
 		// characters translated per 100 seconds.  We will retry every 10s
 		// up to 10x, which is enough to flush the rate limit.
@@ -73,15 +108,78 @@ public class GoogleMTv2Parameters extends GoogleMTParameters {
 		desc.add(USE_PBMT,
 		    "Use Phrase-Based MT",
 		    "Use the legacy PBMT system rather than Neural MT");
+		desc.add(USE_BATCH_POST,
+		    "Send batches as POST requests",
+		    "Send many segments per request in a JSON body rather than in a GET URL limited to 2K characters");
 		desc.add(RETRY_COUNT,
 	        "Retry Count",
 	        "Number of retries to attempt before failing");
 		desc.add(RETRY_MS,
 		        "Retry Interval (ms)",
-		        "Time to wait before retrying a failed query");
+		        "Time to wait before the first retry of a failed query, doubled at each retry");
+		desc.add(MAX_RETRY_MS,
+		        "Maximum Retry Interval (ms)",
+		        "Longest time to wait between retries, unless Google asks for longer");
 		desc.add(FAILURES_BEFORE_ABORT,
 		        "Failures before abort",
 		        "Number of times we let queries fail (after retries) before aborting the process");
+		desc.add(MAX_CONCURRENT_BATCHES,
+		        "Concurrent batches",
+		        "Maximum number of batch requests sent to the server at the same time");
+		desc.add(USE_VIRTUAL_THREADS,
+		        "Use virtual threads",
+		        "Run each batch request and its retries on a virtual thread (Java 21 or later)");
+		desc.add(ADAPTIVE_CONCURRENCY,
+		        "Adapt the number of concurrent requests",
+		        "Send fewer requests at once when Google slows down, and more when it keeps up, up to the maximum number of concurrent batches");
+		desc.add(CACHE_SIZE,
+		        "Cache size",
+		        "Maximum number of translations kept in memory to avoid translating the same text twice (0 for no cache)");
+		desc.add(CACHE_FILE,
+		        "Cache file",
+		        "File where translations are kept between runs (leave empty for no persistent cache)");
+		desc.add(CACHE_FILE_MAX_MB,
+		        "Cache file size limit (MB)",
+		        "Size above which the oldest translations are dropped from the cache file (0 for no limit)");
+		desc.add(ADAPTIVE_BATCHING,
+		        "Adapt the batch size",
+		        "Make the batches smaller when Google is slow or overloaded, and larger again when it recovers");
+		desc.add(TARGET_LATENCY_MS,
+		        "Target latency (ms)",
+		        "Response time above which adaptive batches are made smaller");
+		desc.add(COALESCE_WINDOW_MS,
+		        "Coalescing window (ms)",
+		        "Time a single query waits for other queries to be sent with it in one request (0 to send each query at once)");
+		desc.add(COALESCE_MAX_SIZE,
+		        "Coalescing batch size",
+		        "Number of waiting queries at which they are sent without waiting for the end of the window");
+		desc.add(HEDGE_PERCENTILE,
+		        "Hedging percentile",
+		        "Send a single query again if it takes longer than this percentile of the recent response times, and keep the first answer (0 for never)");
+		desc.add(HEDGE_BUDGET_PERCENT,
+		        "Hedging budget (%)",
+		        "Largest number of queries sent again, as a percentage of the queries sent");
+		desc.add(CIRCUIT_BREAKER_WINDOW,
+		        "Circuit breaker window",
+		        "Number of recent calls watched to suspend calls while Google is failing (0 for no circuit breaker)");
+		desc.add(CIRCUIT_BREAKER_FAILURE_RATE,
+		        "Circuit breaker failure rate (%)",
+		        "Percentage of failed calls in the window at which calls are suspended");
+		desc.add(CIRCUIT_BREAKER_OPEN_MS,
+		        "Circuit breaker open time (ms)",
+		        "Time calls are suspended for before a single call is tried again");
+		desc.add(MAX_CHARS_PER_100S,
+		        "Characters per 100 seconds",
+		        "Maximum number of characters sent per 100 seconds, shared by all the connectors using the same credentials (0 for no limit)");
+		desc.add(MAX_REQUESTS_PER_100S,
+		        "Requests per 100 seconds",
+		        "Maximum number of requests sent per 100 seconds, shared by all the connectors using the same credentials (0 for no limit)");
+		desc.add(CONNECT_TIMEOUT_MS,
+		        "Connect Timeout (ms)",
+		        "Time to wait for a connection to the server (0 for no timeout)");
+		desc.add(READ_TIMEOUT_MS,
+		        "Read Timeout (ms)",
+		        "Time to wait for the server to answer a query (0 for no timeout)");
 		return desc;
 	}
 
@@ -91,9 +189,31 @@ public class GoogleMTv2Parameters extends GoogleMTParameters {
 		TextInputPart tip = desc.addTextInputPart(paramsDesc.get(APIKEY));
 		tip.setPassword(true);
 		desc.addCheckboxPart(paramsDesc.get(USE_PBMT));
+		desc.addCheckboxPart(paramsDesc.get(USE_BATCH_POST));
 		desc.addTextInputPart(paramsDesc.get(RETRY_COUNT));
 		desc.addTextInputPart(paramsDesc.get(RETRY_MS));
+		desc.addTextInputPart(paramsDesc.get(MAX_RETRY_MS));
 		desc.addTextInputPart(paramsDesc.get(FAILURES_BEFORE_ABORT));
+		desc.addTextInputPart(paramsDesc.get(MAX_CONCURRENT_BATCHES));
+		desc.addCheckboxPart(paramsDesc.get(USE_VIRTUAL_THREADS));
+		desc.addCheckboxPart(paramsDesc.get(ADAPTIVE_CONCURRENCY));
+		desc.addTextInputPart(paramsDesc.get(CACHE_SIZE));
+		tip = desc.addTextInputPart(paramsDesc.get(CACHE_FILE));
+		tip.setAllowEmpty(true);
+		desc.addTextInputPart(paramsDesc.get(CACHE_FILE_MAX_MB));
+		desc.addCheckboxPart(paramsDesc.get(ADAPTIVE_BATCHING));
+		desc.addTextInputPart(paramsDesc.get(TARGET_LATENCY_MS));
+		desc.addTextInputPart(paramsDesc.get(COALESCE_WINDOW_MS));
+		desc.addTextInputPart(paramsDesc.get(COALESCE_MAX_SIZE));
+		desc.addTextInputPart(paramsDesc.get(HEDGE_PERCENTILE));
+		desc.addTextInputPart(paramsDesc.get(HEDGE_BUDGET_PERCENT));
+		desc.addTextInputPart(paramsDesc.get(CIRCUIT_BREAKER_WINDOW));
+		desc.addTextInputPart(paramsDesc.get(CIRCUIT_BREAKER_FAILURE_RATE));
+		desc.addTextInputPart(paramsDesc.get(CIRCUIT_BREAKER_OPEN_MS));
+		desc.addTextInputPart(paramsDesc.get(MAX_CHARS_PER_100S));
+		desc.addTextInputPart(paramsDesc.get(MAX_REQUESTS_PER_100S));
+		desc.addTextInputPart(paramsDesc.get(CONNECT_TIMEOUT_MS));
+		desc.addTextInputPart(paramsDesc.get(READ_TIMEOUT_MS));
 		return desc;
 	}
 
@@ -16,27 +16,36 @@
 
 package net.sf.okapi.connectors.google.v2;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import net.sf.okapi.common.Util;
 import net.sf.okapi.connectors.google.GoogleQueryBuilder;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 
 public class GoogleV2QueryBuilder<T> extends GoogleQueryBuilder<T> {
     // "The URL for GET requests, including parameters, must be less than 2K characters."
     // https://cloud.google.com/translate/docs/translating-text#translating_text_1
     private static final int QUERY_LIMIT = 2048;
     private static final String QPARAM = "&q=";
+    // POST requests carry the texts in a JSON body. The API accepts at most 128 q entries per request,
+    // and recommends keeping the total below 30K characters.
+    // https://cloud.google.com/translate/docs/reference/rest/v2/translate
+    public static final int POST_SEGMENT_LIMIT = 128;
+    public static final int POST_CHAR_LIMIT = 30000;
     protected GoogleMTv2Parameters params;
 
     private StringBuilder sb;
     private String baseUrl;
+    private boolean post;
+    private int charCount;
+    private int charLimit = Integer.MAX_VALUE;
+    private int segmentLimit = Integer.MAX_VALUE;
 
     public GoogleV2QueryBuilder(String baseUrl, GoogleMTv2Parameters params, String srcCode, String tgtCode) {
         this.params = params;
         this.srcCode = srcCode;
         this.tgtCode = tgtCode;
         this.baseUrl = baseUrl;
+        this.post = params.getUseBatchPost();
         reset();
     }
 
@@ -52,9 +61,27 @@ public class GoogleV2QueryBuilder<T> extends GoogleQueryBuilder<T> {
         }
         sourceTexts.clear();
         sources.clear();
+        charCount = 0;
+    }
+
+    /**
+     * Sets limits on the size of the batch, on top of the ones of the API. They don't apply to the
+     * first text, so that a batch can always hold at least one text.
+     */
+    public void setLimits(int charLimit, int segmentLimit) {
+        this.charLimit = charLimit;
+        this.segmentLimit = segmentLimit;
     }
 
-    protected boolean hasCapacity(String sourceText) {
+    public boolean hasCapacity(String sourceText) {
+        if (!sourceTexts.isEmpty() && ((sourceTexts.size() >= segmentLimit)
+                || (charCount + sourceText.length() > charLimit))) {
+            return false;
+        }
+        if (post) {
+            return (sourceTexts.size() < POST_SEGMENT_LIMIT)
+                    && (charCount + sourceText.length() <= POST_CHAR_LIMIT);
+        }
         int additionalLen = QPARAM.length() + Util.URLEncodeUTF8(sourceText).length();
         return (sb.length() + additionalLen < QUERY_LIMIT);
     }
@@ -63,13 +90,35 @@ public class GoogleV2QueryBuilder<T> extends GoogleQueryBuilder<T> {
         if (!hasCapacity(sourceText)) {
             throw new IllegalStateException("Query too long to add '" + sourceText + "'");
         }
-        sb.append(QPARAM).append(Util.URLEncodeUTF8(sourceText));
+        if (!post) {
+            sb.append(QPARAM).append(Util.URLEncodeUTF8(sourceText));
+        }
+        charCount += sourceText.length();
         sourceTexts.add(sourceText);
         sources.add(source);
     }
 
+    /**
+     * Returns the request URL. In POST mode the texts are not part of it, see {@link #getPostBody()}.
+     */
     public String getQuery() {
         return sb.toString();
     }
 
+    /**
+     * Indicates if the texts of this query are sent in a POST body rather than in the URL.
+     */
+    public boolean isPost() {
+        return post;
+    }
+
+    @SuppressWarnings("unchecked")
+    public String getPostBody() {
+        JSONArray q = new JSONArray();
+        q.addAll(sourceTexts);
+        JSONObject json = new JSONObject();
+        json.put("q", q);
+        return json.toJSONString();
+    }
+
 }
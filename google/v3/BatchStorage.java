@@ -0,0 +1,52 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google.v3;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Storage holding the input and output files of a batch translation.
+ * <p>
+ * Google reads and writes these files in Cloud Storage, so in production this is backed by a
+ * bucket and the URIs are <code>gs://</code> URIs. {@link LocalBatchStorage} keeps them on the local
+ * file system instead, which lets the batch mode run against
+ * {@link LocalBatchTranslationAPI}, a stand-in for the service.
+ */
+public interface BatchStorage {
+    /**
+     * Opens a new file for writing, in UTF-8, replacing any existing file.
+     */
+    Writer openWriter(String uri) throws IOException;
+
+    /**
+     * Opens a file for reading, in UTF-8.
+     */
+    Reader openReader(String uri) throws IOException;
+
+    /**
+     * Lists the files whose URI starts with the given prefix.
+     */
+    List<String> list(String uriPrefix) throws IOException;
+
+    /**
+     * Deletes a file, if it exists.
+     */
+    void delete(String uri) throws IOException;
+}
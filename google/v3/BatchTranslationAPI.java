@@ -0,0 +1,37 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+
+package net.sf.okapi.connectors.google.v3;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * Long-running batch translation of files, which only the v3 API offers.
+ */
+public interface BatchTranslationAPI {
+    /**
+     * Starts a long-running translation of a file, writing the translations as files under the
+     * output prefix.
+     * @param inputUri the file to translate, one tab-separated id and text per line.
+     * @param outputUriPrefix the folder where to write the results, which must be empty.
+     * @return a future completed when the translation is over, or completed exceptionally if it failed.
+     * @throws IOException
+     */
+    Future<?> batchTranslate(String srcCode, String trgCode, String inputUri, String outputUriPrefix)
+                throws IOException;
+}
@@ -0,0 +1,212 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google.v3;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.gax.rpc.ApiException;
+
+import net.sf.okapi.common.exceptions.OkapiException;
+import net.sf.okapi.connectors.google.GoogleMTErrorException;
+import net.sf.okapi.connectors.google.RequestExecutor;
+import net.sf.okapi.connectors.google.TranslationResponse;
+
+/**
+ * Translates a large number of texts with a single long-running batch translation.
+ * <p>
+ * The texts are staged in a TSV file under the batch input folder, one line per text with its
+ * index and the text. Tabs and line breaks in the texts are written as character references, which
+ * the service leaves alone since the texts are HTML. The translation is started, polled until it is
+ * done, and the TSV files it writes under a new folder of the batch output folder are read back:
+ * each line has the index, the source and the translation. The staged and the output files are
+ * deleted afterwards.
+ */
+public class BulkTranslator {
+    private static final Logger LOG = LoggerFactory.getLogger(BulkTranslator.class);
+    private static final AtomicInteger JOB_COUNT = new AtomicInteger();
+    private static final String TRANSLATIONS_SUFFIX = "_translations.tsv";
+    private static final String ERRORS_SUFFIX = "_errors.tsv";
+
+    private final BatchTranslationAPI api;
+    private final RequestExecutor executor;
+    private final BatchStorage storage;
+    private final GoogleMTv3Parameters params;
+
+    public BulkTranslator(BatchTranslationAPI api, RequestExecutor executor, BatchStorage storage,
+                          GoogleMTv3Parameters params) {
+        this.api = api;
+        this.executor = executor;
+        this.storage = storage;
+        this.params = params;
+    }
+
+    /**
+     * Translates texts.
+     * @return one response per text, null for the texts that could not be translated.
+     */
+    public List<TranslationResponse> translate(String srcCode, String trgCode, List<String> texts) {
+        String job = "okapi-" + System.currentTimeMillis() + "-" + JOB_COUNT.incrementAndGet();
+        String inputUri = resolve(params.getBatchInputUri(), job + ".tsv");
+        String outputUri = resolve(params.getBatchOutputUri(), job + "/");
+        TranslationResponse[] responses = new TranslationResponse[texts.size()];
+        try {
+            stage(inputUri, texts);
+            LOG.info("Starting batch translation {} of {} texts", job, texts.size());
+            Future<?> operation = executor.execute("batchTranslate", 0,
+                    () -> api.batchTranslate(srcCode, trgCode, inputUri, outputUri));
+            if (operation == null) {
+                return Arrays.asList(responses);
+            }
+            waitFor(job, operation);
+            readResults(outputUri, texts, responses);
+        }
+        catch (IOException e) {
+            throw new OkapiException("Batch translation " + job + " failed: " + e.getMessage(), e);
+        }
+        finally {
+            cleanUp(inputUri, outputUri);
+        }
+        return Arrays.asList(responses);
+    }
+
+    private void stage(String inputUri, List<String> texts) throws IOException {
+        try (Writer writer = storage.openWriter(inputUri)) {
+            for (int i = 0; i < texts.size(); i++) {
+                writer.write(Integer.toString(i));
+                writer.write('\t');
+                writer.write(escape(texts.get(i)));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private void waitFor(String job, Future<?> operation) {
+        long start = System.currentTimeMillis();
+        try {
+            while (!operation.isDone()) {
+                Thread.sleep(Math.max(1, params.getBatchPollIntervalMs()));
+                LOG.debug("Batch translation {} running for {} s", job,
+                          TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - start));
+            }
+            operation.get();
+        }
+        catch (InterruptedException e) {
+            operation.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new OkapiException("Interrupted while waiting for batch translation " + job, e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = (e.getCause() instanceof ApiException) ?
+                    GoogleMTAPIImpl.toError((ApiException)e.getCause(), job) : e.getCause();
+            if (cause instanceof GoogleMTErrorException) {
+                GoogleMTErrorException error = (GoogleMTErrorException)cause;
+                LOG.error("Error {} - {} for batch translation {}", error.getCode(), error.getMessage(), job);
+            }
+            throw new OkapiException("Batch translation " + job + " failed: " + cause.getMessage(), cause);
+        }
+        LOG.info("Batch translation {} done in {} s", job,
+                 TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - start));
+    }
+
+    private void readResults(String outputUri, List<String> texts, TranslationResponse[] responses)
+            throws IOException {
+        for (String uri : storage.list(outputUri)) {
+            if (uri.endsWith(ERRORS_SUFFIX)) {
+                try (BufferedReader reader = new BufferedReader(storage.openReader(uri))) {
+                    LOG.error("Batch translation errors in {}: {}", uri, reader.readLine());
+                }
+            }
+            if (!uri.endsWith(TRANSLATIONS_SUFFIX)) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(storage.openReader(uri))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", 3);
+                    if (fields.length < 3) {
+                        continue;
+                    }
+                    int i;
+                    try {
+                        i = Integer.parseInt(fields[0].trim());
+                    }
+                    catch (NumberFormatException e) {
+                        continue;
+                    }
+                    if (i >= 0 && i < texts.size()) {
+                        responses[i] = new TranslationResponse(texts.get(i), unescape(fields[2]));
+                    }
+                }
+            }
+        }
+    }
+
+    private void cleanUp(String inputUri, String outputUri) {
+        try {
+            storage.delete(inputUri);
+            for (String uri : storage.list(outputUri)) {
+                storage.delete(uri);
+            }
+        }
+        catch (IOException e) {
+            LOG.warn("Could not delete the batch translation files: {}", e.getMessage());
+        }
+    }
+
+    private static String resolve(String folder, String name) {
+        if (folder.isEmpty()) {
+            throw new OkapiException("The batch input and output folders must be set to use batch translation.");
+        }
+        return folder.endsWith("/") ? folder + name : folder + "/" + name;
+    }
+
+    static String escape(String text) {
+        StringBuilder sb = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r') {
+                if (sb == null) {
+                    sb = new StringBuilder(text.length() + 16).append(text, 0, i);
+                }
+                sb.append("&#").append((int)c).append(';');
+            }
+            else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return (sb == null) ? text : sb.toString();
+    }
+
+    static String unescape(String text) {
+        if (text.indexOf("&#") < 0) {
+            return text;
+        }
+        return text.replace("&#9;", "\t").replace("&#10;", "\n").replace("&#13;", "\r");
+    }
+}
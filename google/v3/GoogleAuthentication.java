@@ -27,12 +27,14 @@ import java.util.Collections;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.translate.v3.TranslationServiceSettings;
 import com.google.cloud.translate.v3.TranslationServiceClient;
 import net.sf.okapi.common.exceptions.OkapiException;
 
 public class GoogleAuthentication {
+    private static final String CLOUD_PLATFORM_SCOPE = "https://www.googleapis.com/auth/cloud-platform";
 
     private GoogleCredentials credential;
 
@@ -53,7 +55,9 @@ public class GoogleAuthentication {
      */
     public void setCredential(InputStream inputStream) {
         try {
-            credential = GoogleCredentials.fromStream(inputStream);
+            // Scoped now so that tokens can be fetched before the client asks for them
+            credential = GoogleCredentials.fromStream(inputStream)
+                    .createScoped(Collections.singleton(CLOUD_PLATFORM_SCOPE));
         } catch (IOException e) {
             credential = null;
             throw new RuntimeException(e);
@@ -77,6 +81,24 @@ public class GoogleAuthentication {
     }
 
 
+    /**
+     * Fetches a new access token. The client uses the same credential, so it finds a valid token
+     * instead of fetching one itself on its next call.
+     *
+     * @return the time the token expires, in milliseconds since the epoch, or -1 if unknown.
+     */
+    public long refreshToken() throws IOException {
+        if (credential == null) {
+            return -1;
+        }
+        credential.refresh();
+        AccessToken token = credential.getAccessToken();
+        if (token == null || token.getExpirationTime() == null) {
+            return -1;
+        }
+        return token.getExpirationTime().getTime();
+    }
+
     public TranslationServiceClient getTranslationServiceSettings() throws IOException {
         try {
             TranslationServiceSettings translationServiceSettings =
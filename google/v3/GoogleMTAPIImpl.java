@@ -19,6 +19,12 @@ package net.sf.okapi.connectors.google.v3;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import net.sf.okapi.common.IParameters;
 import net.sf.okapi.common.Util;
@@ -28,11 +34,24 @@ import org.slf4j.LoggerFactory;
 
 import net.sf.okapi.common.exceptions.OkapiException;
 import net.sf.okapi.connectors.google.GoogleMTAPI;
+import net.sf.okapi.connectors.google.GoogleMTErrorException;
 import net.sf.okapi.connectors.google.GoogleResponseParser;
 import net.sf.okapi.connectors.google.GoogleQueryBuilder;
+import net.sf.okapi.connectors.google.SegmentChunker;
+import net.sf.okapi.connectors.google.SharedResources;
 import net.sf.okapi.connectors.google.TranslationResponse;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.translate.v3.BatchTranslateTextRequest;
+import com.google.cloud.translate.v3.GcsDestination;
+import com.google.cloud.translate.v3.GcsSource;
+import com.google.cloud.translate.v3.InputConfig;
 import com.google.cloud.translate.v3.LocationName;
+import com.google.cloud.translate.v3.OutputConfig;
 import com.google.cloud.translate.v3.TranslateTextRequest;
 import com.google.cloud.translate.v3.TranslateTextResponse;
 import com.google.cloud.translate.v3.Translation;
@@ -43,33 +62,36 @@ import com.google.cloud.translate.v3.SupportedLanguages;
 import com.google.cloud.translate.v3.GlossaryName;
 import com.google.cloud.translate.v3.TranslateTextGlossaryConfig;
 
-public class GoogleMTAPIImpl implements GoogleMTAPI {
+public class GoogleMTAPIImpl implements GoogleMTAPI, BatchTranslationAPI {
     private final Logger LOG = LoggerFactory.getLogger(getClass());
+    // Callbacks only complete a future, they can run on the gRPC thread
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
     private GoogleMTv3Parameters params;
     private GoogleResponseParser parser = new GoogleResponseParser();
-    private TranslationServiceClient client;
-    private GoogleAuthentication auth;
+    // The client is shared with the other connectors using the same service account
+    private final SharedResources.Slot<SharedServiceClient> clientSlot =
+            new SharedResources.Slot<>(SharedServiceClient.class);
+    private CompletableFuture<SharedServiceClient> warmUp;
+    private volatile RequestTemplate template;
 
     public GoogleMTAPIImpl(GoogleMTv3Parameters params) {
         this.params = params;
-        auth = new GoogleAuthentication();
     }
 
     @Override
     public List<String> getLanguages() throws IOException, ParseException {
-        if (client == null) {
-            try {
-                auth.setCredentialFilePath(params.getGoogleCredentials());
-                client = auth.getTranslationServiceSettings();
-            } catch (OkapiException e) {
-                throw new OkapiException("Error creating service client: " + e.getMessage(), e);
-            }
-        }
+        TranslationServiceClient client = getClient();
         LocationName parent = LocationName.of(params.getProjectId(), "global");
         GetSupportedLanguagesRequest request =
                 GetSupportedLanguagesRequest.newBuilder().setParent(parent.toString()).build();
 
-        SupportedLanguages response = client.getSupportedLanguages(request);
+        SupportedLanguages response;
+        try {
+            response = client.getSupportedLanguages(request);
+        }
+        catch (ApiException e) {
+            throw toError(e, null);
+        }
         List<String> languages = new ArrayList<>();
         for (SupportedLanguage language : response.getLanguagesList()) {
             languages.add(language.getLanguageCode());
@@ -79,32 +101,141 @@ public class GoogleMTAPIImpl implements GoogleMTAPI {
 
     @Override
     public <T> List<TranslationResponse> translate(GoogleQueryBuilder<T> qb) throws IOException, ParseException {
-        if (client == null) {
-            try {
-                auth.setCredentialFilePath(params.getGoogleCredentials());
-                client = auth.getTranslationServiceSettings();
-            } catch (OkapiException e) {
-                throw new OkapiException("Error creating service client: " + e.getMessage(), e);
+        TranslationServiceClient client = getClient();
+        TranslateTextResponse response;
+        try {
+            response = client.translateText(newRequest(qb));
+        }
+        catch (ApiException e) {
+            throw toError(e, qb.getQuery());
+        }
+        return toResponses(qb, response);
+    }
+
+    /**
+     * Sends the request through the future-based callable of the client, so that many requests can
+     * be in flight on the channel without a thread waiting for each of them.
+     */
+    @Override
+    public <T> CompletableFuture<List<TranslationResponse>> translateAsync(GoogleQueryBuilder<T> qb) {
+        CompletableFuture<List<TranslationResponse>> result = new CompletableFuture<>();
+        ApiFuture<TranslateTextResponse> future;
+        try {
+            future = getClient().translateTextCallable().futureCall(newRequest(qb));
+        }
+        catch (IOException | RuntimeException e) {
+            result.completeExceptionally((e instanceof ApiException) ? toError((ApiException)e, qb.getQuery()) : e);
+            return result;
+        }
+        ApiFutures.addCallback(future, new ApiFutureCallback<TranslateTextResponse>() {
+            @Override
+            public void onSuccess(TranslateTextResponse response) {
+                try {
+                    result.complete(toResponses(qb, response));
+                }
+                catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally((t instanceof ApiException) ? toError((ApiException)t, qb.getQuery()) : t);
             }
+        }, DIRECT_EXECUTOR);
+        return result;
+    }
+
+    /**
+     * Starts a BatchTranslateText operation. Batch translations cannot use the global location, so
+     * the location parameter must be set to a region such as us-central1.
+     * @return the operation, which is a future of the final BatchTranslateResponse.
+     */
+    @Override
+    public Future<?> batchTranslate(String srcCode, String trgCode, String inputUri, String outputUriPrefix)
+            throws IOException {
+        TranslationServiceClient client = getClient();
+        RequestTemplate template = getTemplate();
+        BatchTranslateTextRequest.Builder request =
+                BatchTranslateTextRequest.newBuilder()
+                        .setParent(template.parent)
+                        .setSourceLanguageCode(srcCode)
+                        .addTargetLanguageCodes(trgCode)
+                        .addInputConfigs(InputConfig.newBuilder()
+                                .setGcsSource(GcsSource.newBuilder().setInputUri(inputUri).build())
+                                .setMimeType("text/html")
+                                .build())
+                        .setOutputConfig(OutputConfig.newBuilder()
+                                .setGcsDestination(GcsDestination.newBuilder().setOutputUriPrefix(outputUriPrefix).build())
+                                .build());
+        if (template.modelPath != null) {
+            request.putModels(trgCode, template.modelPath);
+        }
+        if (template.glossaryConfig != null) {
+            request.putGlossaries(trgCode, template.glossaryConfig);
+        }
+        try {
+            return client.batchTranslateTextAsync(request.build());
         }
-        String projectCredentials = params.getProjectId();
-        String location = params.getLocation();
-        LocationName parent = LocationName.of(projectCredentials, location);
-        TranslateTextRequest.Builder request =
-                TranslateTextRequest.newBuilder()
-                        .setParent(parent.toString())
-                        .setSourceLanguageCode(qb.getSourceCode())
-                        .setTargetLanguageCode(qb.getTargetCode())
-                        .addContents(qb.getQuery());
-        String modelPath = getModelPath(projectCredentials, location);
-        TranslateTextGlossaryConfig glossaryConfig = getGlossaryConfig(projectCredentials, location);
-        if (modelPath != null) {
-            request.setModel(modelPath);
-        }
-        if (glossaryConfig != null) {
-            request.setGlossaryConfig(glossaryConfig);
-        }
-        TranslateTextResponse response = client.translateText(request.build());
+        catch (ApiException e) {
+            throw toError(e, inputUri);
+        }
+    }
+
+    private <T> TranslateTextRequest newRequest(GoogleQueryBuilder<T> qb) {
+        return getTemplate().getPrototype(qb.getSourceCode(), qb.getTargetCode()).toBuilder()
+                .addAllContents(qb.getSourceTexts())
+                .build();
+    }
+
+    private RequestTemplate getTemplate() {
+        RequestTemplate template = this.template;
+        if (template == null) {
+            template = new RequestTemplate(params.getProjectId(), params.getLocation(),
+                                           getModelPath(params.getProjectId(), params.getLocation()),
+                                           getGlossaryConfig(params.getProjectId(), params.getLocation()));
+            this.template = template;
+        }
+        return template;
+    }
+
+    /**
+     * What the translate requests have in common for a given set of parameters: the parent
+     * location, the model and the glossary, and for each language pair a request prototype holding
+     * all that but the contents. Building it once avoids doing it again for every request.
+     */
+    private static final class RequestTemplate {
+        private final String parent;
+        private final String modelPath;
+        private final TranslateTextGlossaryConfig glossaryConfig;
+        private final ConcurrentHashMap<String, TranslateTextRequest> prototypes = new ConcurrentHashMap<>();
+
+        RequestTemplate(String projectId, String location, String modelPath,
+                        TranslateTextGlossaryConfig glossaryConfig) {
+            this.parent = LocationName.of(projectId, location).toString();
+            this.modelPath = modelPath;
+            this.glossaryConfig = glossaryConfig;
+        }
+
+        TranslateTextRequest getPrototype(String srcCode, String trgCode) {
+            return prototypes.computeIfAbsent(srcCode + '\u0001' + trgCode, k -> {
+                TranslateTextRequest.Builder request =
+                        TranslateTextRequest.newBuilder()
+                                .setParent(parent)
+                                .setSourceLanguageCode(srcCode)
+                                .setTargetLanguageCode(trgCode);
+                if (modelPath != null) {
+                    request.setModel(modelPath);
+                }
+                if (glossaryConfig != null) {
+                    request.setGlossaryConfig(glossaryConfig);
+                }
+                return request.build();
+            });
+        }
+    }
+
+    private <T> List<TranslationResponse> toResponses(GoogleQueryBuilder<T> qb, TranslateTextResponse response) {
         List<Translation> responseList = response.getTranslationsList();
         List<TranslationResponse> responses = new ArrayList<>();
         if (qb.getSourceCount() != responseList.size()) {
@@ -115,11 +246,82 @@ public class GoogleMTAPIImpl implements GoogleMTAPI {
         }
         for (int i = 0; i < qb.getSourceCount(); i++) {
             responses.add(new TranslationResponse(qb.getSourceTexts().get(i), responseList.get(i).getTranslatedText()));
-            System.out.println(responseList.get(i).getTranslatedText());
         }
         return responses;
     }
 
+    /**
+     * Converts a gRPC error into the error the REST API would have returned, so that both connectors
+     * handle errors the same way. The gRPC status (e.g. RESOURCE_EXHAUSTED) is kept as the reason.
+     */
+    static GoogleMTErrorException toError(ApiException e, String query) {
+        StatusCode.Code code = e.getStatusCode().getCode();
+        return new GoogleMTErrorException(code.getHttpStatusCode(), e.getMessage(), "", code.name(), query);
+    }
+
+    /**
+     * Starts creating the client and fetching the first access token in the background, so that the
+     * first request doesn't have to wait for them.
+     */
+    @Override
+    public synchronized void open() {
+        if (clientSlot.peek() == null && warmUp == null && !Util.isEmpty(params.getGoogleCredentials())) {
+            warmUp = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return acquireClient();
+                }
+                catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, SharedServiceClient.WARM_UP_EXECUTOR);
+        }
+    }
+
+    /**
+     * Releases the client, which is shut down once no connector uses it any more.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<SharedServiceClient> pending;
+        synchronized (this) {
+            pending = warmUp;
+            warmUp = null;
+        }
+        if (pending != null) {
+            // Let a background creation finish, so that its client gets released as well
+            try {
+                pending.join();
+            }
+            catch (CompletionException | CancellationException e) {
+                // No client to release
+            }
+        }
+        clientSlot.release();
+    }
+
+    private TranslationServiceClient getClient() throws IOException {
+        CompletableFuture<SharedServiceClient> warmUp;
+        synchronized (this) {
+            warmUp = this.warmUp;
+        }
+        if (warmUp != null) {
+            // Wait for the background creation rather than starting another one. If it failed,
+            // try again here so that the error is reported to the caller.
+            try {
+                warmUp.join();
+            }
+            catch (CompletionException | CancellationException e) {
+                LOG.debug("Background creation of the client failed: {}", e.getMessage());
+            }
+        }
+        return acquireClient().getClient();
+    }
+
+    private SharedServiceClient acquireClient() throws IOException {
+        String credentials = params.getGoogleCredentials();
+        return clientSlot.get(credentials, () -> new SharedServiceClient(credentials), SharedServiceClient::close);
+    }
+
     private TranslateTextGlossaryConfig getGlossaryConfig(String projectCredentials, String location) {
         if (!Util.isEmpty(params.getGlossaryId())) {
             if (!location.equals("us-central1")) {
@@ -146,13 +348,32 @@ public class GoogleMTAPIImpl implements GoogleMTAPI {
 
     public void setParameters(IParameters params) {
         this.params = (GoogleMTv3Parameters) params;
+        // Built again from the new parameters on the next request
+        template = null;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Translates a text too long for a single request by splitting it into chunks, sent in as few
+     * requests as possible.
+     */
     @Override
     public <T> TranslationResponse translateSingleSegment(GoogleQueryBuilder<T> qb, String sourceText)
             throws IOException, ParseException {
-        return null;
+        List<String> chunks = SegmentChunker.split(sourceText, SegmentChunker.DEFAULT_CHUNK_LENGTH);
+        List<TranslationResponse> responses = new ArrayList<>(chunks.size());
+        GoogleV3QueryBuilder<T> chunkQuery = null;
+        for (String chunk : chunks) {
+            if (chunkQuery != null && !chunkQuery.hasCapacity(chunk)) {
+                responses.addAll(translate(chunkQuery));
+                chunkQuery = null;
+            }
+            if (chunkQuery == null) {
+                chunkQuery = new GoogleV3QueryBuilder<>(params, qb.getSourceCode(), qb.getTargetCode());
+            }
+            chunkQuery.addQuery(chunk, null);
+        }
+        responses.addAll(translate(chunkQuery));
+        return SegmentChunker.joinResponses(sourceText, chunks, responses);
     }
 
 
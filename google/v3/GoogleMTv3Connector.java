@@ -20,54 +20,50 @@ import net.sf.okapi.common.IParameters;
 import net.sf.okapi.common.LocaleId;
 import net.sf.okapi.common.Util;
 import net.sf.okapi.common.exceptions.OkapiException;
-import net.sf.okapi.common.query.QueryResult;
-import net.sf.okapi.common.resource.ITextUnit;
-import net.sf.okapi.common.resource.TextFragment;
-import net.sf.okapi.lib.translation.BaseConnector;
-import net.sf.okapi.lib.translation.QueryUtil;
 import net.sf.okapi.connectors.google.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 
-public class GoogleMTv3Connector extends BaseConnector {
+public class GoogleMTv3Connector extends BaseGoogleMTConnector<GoogleMTv3Parameters> {
     private String base_url;
 
-    private final Logger LOG = LoggerFactory.getLogger(getClass());
-	private GoogleMTv3Parameters params;
-	private int failureCount;
-    private QueryUtil util;
-    private GoogleMTAPI api;
+	private GoogleMTAPI hedgeApi;
+	private BatchStorage batchStorage;
 
 	public GoogleMTv3Connector() {
-        params = new GoogleMTv3Parameters();
-	    util = new QueryUtil();
-        api = new GoogleMTAPIImpl(params);
+		this(new GoogleMTv3Parameters());
 	}
 
 	public GoogleMTv3Connector(GoogleMTAPI api) {
-        params = new GoogleMTv3Parameters();
-        util = new QueryUtil();
-        this.api = api;
+		this(new GoogleMTv3Parameters(), api);
 	}
 
-	@Override
-	public void setParameters (IParameters params) {
-		this.params = (GoogleMTv3Parameters)params;
-        api.setParameters(this.params);
+	private GoogleMTv3Connector (GoogleMTv3Parameters params) {
+		this(params, new GoogleMTAPIImpl(params));
+	}
+
+	private GoogleMTv3Connector (GoogleMTv3Parameters params, GoogleMTAPI api) {
+		super(params, api, new AdaptiveBatchPlanner(GoogleV3QueryBuilder.CODE_POINT_LIMIT,
+				GoogleV3QueryBuilder.CONTENT_LIMIT, 0));
 	}
-	
+
 	@Override
-	public GoogleMTv3Parameters getParameters () {
-		return params;
+	public void setParameters (IParameters params) {
+		super.setParameters(params);
+		closeHedgeApi();
 	}
-	
+
 	@Override
-	public void close () {
-		// Nothing to do
+	public synchronized void close () {
+		closeHedgeApi();
+		super.close();
 	}
+
 	@Override
 	public String getName () {
 		return "Google-MTv3";
@@ -80,138 +76,186 @@ public class GoogleMTv3Connector extends BaseConnector {
 
 	@Override
 	public void open () {
-		failureCount = 0;
+		// The parameters may have been changed since they were set: have the API pick them up again
+		api.setParameters(params);
+		closeHedgeApi();
+		super.open();
 	}
 
 	@Override
-	public int query (String plainText) {
-		return _query(plainText, plainText, new TextQueryResultBuilder(params, getName(), getWeight()));
+	protected <T> GoogleQueryBuilder<T> newQueryBuilder () {
+		return new GoogleV3QueryBuilder<>(params, srcCode, trgCode);
 	}
-	
+
 	@Override
-	public int query (TextFragment frag) {
-	    return _query(util.toCodedHTML(frag), frag, new FragmentQueryResultBuilder(params, getName(), getWeight()));
+	protected void checkCredentials () {
+		// Check that we have some json key file available
+		if ( Util.isEmpty(params.getGoogleCredentials()) ) {
+			throw new OkapiException("This connector requires for a Google service account.");
+		}
+		// Check that we have some Key available
+		if ( Util.isEmpty(params.getProjectId()) ) {
+			throw new OkapiException("You must have a Google project ID to use this connector.");
+		}
 	}
 
-	private void retryInterval(int retryCount, String operation) {
-	    LOG.info("{} - retry {} (waiting {} ms)", operation, retryCount, params.getRetryIntervalMs());
-	    try {
-            Thread.sleep(params.getRetryIntervalMs());
-        } catch (InterruptedException e) {
-            throw new OkapiException("Interrupted while trying to contact Google MT");
-        }
+	@Override
+	protected String getCredentialsKey () {
+		return params.getProjectId();
 	}
 
-	protected <T> int _query(String queryText, T originalText, QueryResultBuilder<T> qrBuilder) {
-
-	    current = -1;
-        if (queryText.isEmpty()) return 0;
-        // Check that we have some json key file available
-        if( Util.isEmpty(params.getGoogleCredentials())) {
-            throw new OkapiException("This connector requires for a Google service account.");
-        }
-        // Check that we have some Key available
-        if ( Util.isEmpty(params.getProjectId())) {
-            throw new OkapiException("You must have a Google project ID to use this connector.");
-        }
+	@Override
+	protected String getEndpointKey () {
+		return "v3/" + params.getLocation();
+	}
 
-        List<QueryResult> queryResults = new ArrayList<>();
-        GoogleV3QueryBuilder<T> qb = new GoogleV3QueryBuilder<>(queryText, getParameters(), srcCode, trgCode);
-        qb.addQuery(queryText, originalText);
-        List<TranslationResponse> responses = executeQuery(qb, qrBuilder);
-        if (responses != null) {
-            queryResults.addAll(qrBuilder.convertResponses(responses, originalText));
-        }
-        else {
-            // Underlying call failed for some reason, probably a timeout
-            LOG.error("Received no results for query {}", qb.getQuery());
-            // Return the source text as a dummy translation so that we can maintain the correct indexing
-            queryResults.add(qrBuilder.createDummyResponse(originalText));
-        }
-        if (queryResults.size() > 0) {
-            current = 0;
-            result = queryResults.iterator().next();
-            return 1;
-        }
-        throw new OkapiException("Could not retrieve results from Google after " +
-                                 params.getRetryCount() + " attempts.");
+	/**
+	 * Gets the API the copies of slow queries are sent through: one for the hedging location if
+	 * there is one, otherwise the same as for the first queries.
+	 */
+	@Override
+	protected synchronized GoogleMTAPI getHedgeApi () {
+		String location = params.getHedgeLocation();
+		if ( location.isEmpty() || location.equals(params.getLocation()) || !(api instanceof GoogleMTAPIImpl) ) {
+			return api;
+		}
+		if ( hedgeApi == null ) {
+			GoogleMTv3Parameters hedgeParams = new GoogleMTv3Parameters();
+			hedgeParams.fromString(params.toString());
+			hedgeParams.setLocation(location);
+			hedgeApi = new GoogleMTAPIImpl(hedgeParams);
+		}
+		return hedgeApi;
 	}
 
-    @Override
-    public List<List<QueryResult>> batchQueryText(List<String> plainTexts) {
-        return _batchQuery(plainTexts, plainTexts, new TextQueryResultBuilder(params, getName(), getWeight()));
-    }
+	private synchronized void closeHedgeApi () {
+		if ( hedgeApi != null ) {
+			hedgeApi.close();
+			hedgeApi = null;
+		}
+	}
 
-    @Override
-    public List<List<QueryResult>> batchQuery (List<TextFragment> fragments) {
-        return _batchQuery(util.toCodedHTML(fragments), fragments,
-                new FragmentQueryResultBuilder(params, getName(), getWeight()));
-    }
+	/**
+	 * Sets the storage of the files of batch translations. There is none by default for
+	 * <code>gs://</code> folders, so one must be set to use batch translation with Cloud Storage.
+	 */
+	public synchronized void setBatchStorage (BatchStorage batchStorage) {
+		this.batchStorage = batchStorage;
+	}
 
-    protected <T> List<List<QueryResult>> _batchQuery(List<String> texts, List<T> originalTexts,
-                                                      QueryResultBuilder<T> qrBuilder) {
-         return null;
-    }
+	/**
+	 * Gets the storage of the files of batch translations: the one set with
+	 * {@link #setBatchStorage(BatchStorage)}, or else the local file system for local folders.
+	 */
+	public synchronized BatchStorage getBatchStorage () {
+		if ( batchStorage != null ) {
+			return batchStorage;
+		}
+		if ( params.getBatchInputUri().startsWith("gs://") || params.getBatchOutputUri().startsWith("gs://") ) {
+			throw new OkapiException("No storage is set for the gs:// batch folders, see setBatchStorage().");
+		}
+		return new LocalBatchStorage();
+	}
 
+	/**
+	 * Gets what runs the batch translations of files in the given storage: a local stand-in for
+	 * the local file system, which the service cannot reach, or else the service.
+	 */
+	protected BatchTranslationAPI getBatchTranslationApi (BatchStorage storage) {
+		if ( storage instanceof LocalBatchStorage ) {
+			return new LocalBatchTranslationAPI(api, storage, params);
+		}
+		if ( !(api instanceof BatchTranslationAPI) ) {
+			throw new OkapiException("Batch translation is not supported by this API.");
+		}
+		return (BatchTranslationAPI)api;
+	}
 
-    protected <T> List<TranslationResponse> executeQuery(GoogleV3QueryBuilder<T> qb, QueryResultBuilder<T> qrBuilder) {
-        try {
-            for (int tries = 0; tries < params.getRetryCount(); tries++) {
-                try {
-                    return api.translate(qb);
-                }
-                catch (GoogleMTErrorException e) {
-                    LOG.error("Error {} - {} for query {}", e.getCode(), e.getMessage(), e.getQuery());
-                }
-                retryInterval(tries + 1, "_batchQuery");
+    /**
+     * Sends the batches as a long-running batch translation when there is enough to translate,
+     * otherwise as queries, waiting for each of them or not depending on <code>asyncRequests</code>.
+     */
+    @Override
+    protected <T> List<TranslationResponse> sendBatches(BatchPacker.Plan<GoogleQueryBuilder<T>> plan,
+                                                        List<String> entries, QueryResultBuilder<T> qrBuilder) {
+        List<GoogleQueryBuilder<T>> batches = plan.getBatches();
+        if (isBatchTranslation(batches)) {
+            List<String> sourceTexts = new ArrayList<>(entries.size());
+            for (GoogleQueryBuilder<T> batch : batches) {
+                sourceTexts.addAll(batch.getSourceTexts());
             }
+            BatchStorage storage = getBatchStorage();
+            return new BulkTranslator(getBatchTranslationApi(storage), executor, storage, params)
+                    .translate(srcCode, trgCode, sourceTexts);
         }
-        catch (Throwable e) {
-            throw new OkapiException("Error querying the MT server: " + e.getMessage(), e);
+        if (params.getAsyncRequests()) {
+            return flushQueriesAsync(batches);
+        }
+        return super.sendBatches(plan, entries, qrBuilder);
+    }
+
+    /**
+     * Tells whether there is enough to translate to use a long-running batch translation.
+     */
+    private <T> boolean isBatchTranslation(List<GoogleQueryBuilder<T>> batches) {
+        if (params.getBatchThreshold() <= 0) {
+            return false;
         }
-        // All retries have failed
-        if (( params.getFailuresBeforeAbort() > -1 ) && ( ++failureCount > params.getFailuresBeforeAbort() )) {
-        	throw new OkapiException("Too many retry failures while querying the MT server.");
+        long count = 0;
+        for (GoogleQueryBuilder<T> batch : batches) {
+            count += batch.getCharacterCount();
         }
-        return null;
+        return count >= params.getBatchThreshold();
     }
 
-    public List<LocaleId> getSupportedLanguages() {
+    /**
+     * Sends the batch queries without waiting for each of them, at most maxConcurrentBatches at a
+     * time, and collects their responses in the order of the batches.
+     * @return the responses of all the batches, with null responses for the queries that failed.
+     */
+    private <T> List<TranslationResponse> flushQueriesAsync(List<GoogleQueryBuilder<T>> batches) {
+        Semaphore permits = new Semaphore(Math.max(1, params.getMaxConcurrentBatches()));
+        List<CompletableFuture<List<TranslationResponse>>> futures = new ArrayList<>(batches.size());
         try {
-            for (int tries = 0; tries < params.getRetryCount(); tries++) {
-                List<String> codes = api.getLanguages();
-                if (codes != null) {
-                    List<LocaleId> locales = new ArrayList<>();
-                    for (String code : codes) {
-                        locales.add(convertGoogleLanguageCode(code));
-                    }
-                    return locales;
-                }
-                retryInterval(tries + 1, "getSupportedLanguages");
-
+            for (GoogleQueryBuilder<T> batch : batches) {
+                permits.acquire();
+                LOG.debug("Sending batch query of {} contents", batch.getSourceCount());
+                futures.add(executor.executeAsync("_batchQuery", batch.getCharacterCount(), planner,
+                        () -> api.translateAsync(batch))
+                        .whenComplete((r, e) -> permits.release())
+                        .thenApply(batchResponses -> {
+                            if (batchResponses == null) {
+                                // Underlying call failed for some reason, probably a timeout
+                                LOG.error("Received no results for query {}", batch.getQuery());
+                                return Collections.nCopies(batch.getSourceCount(), null);
+                            }
+                            return batchResponses;
+                        }));
+            }
+            List<TranslationResponse> results = new ArrayList<>();
+            for (CompletableFuture<List<TranslationResponse>> future : futures) {
+                results.addAll(future.get());
             }
+            return results;
         }
-        catch ( Throwable e) {
-            throw new OkapiException("Error querying the MT server: " + e.getMessage(), e);
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OkapiException("Interrupted while waiting for Google MT", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new OkapiException("Error querying the MT server: " + e.getCause().getMessage(), e.getCause());
+        }
+        finally {
+            // Only has an effect if we are bailing out early
+            for (CompletableFuture<List<TranslationResponse>> future : futures) {
+                future.cancel(true);
+            }
         }
-        throw new OkapiException("Could not retrieve language list from Google after " +
-                                 params.getRetryCount() + " attempts.");
-    }
-
-    protected LocaleId convertGoogleLanguageCode(String lang) {
-        return LocaleId.fromBCP47(lang);
     }
 
-	@Override
-	public void leverage (ITextUnit tu) {
-		leverageUsingBatchQuery(tu);
-	}
-
-	@Override
-	public void batchLeverage (List<ITextUnit> tuList) {
-		batchLeverageUsingBatchQuery(tuList);
-	}
-
 	@Override
 	protected String toInternalCode (LocaleId locale) {
 		String code = locale.toBCP47();
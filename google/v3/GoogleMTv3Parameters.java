@@ -31,8 +31,32 @@ public class GoogleMTv3Parameters extends GoogleMTParameters {
 	private static final String LOCATION = "location";
 	private static final String GLOSSARYID = "glossaryId";
 	private static final String RETRY_MS = "retryIntervalMs";
+	private static final String MAX_RETRY_MS = "maxRetryIntervalMs";
 	private static final String RETRY_COUNT = "retryCount";
 	private static final String FAILURES_BEFORE_ABORT = "failuresBeforeAbort";
+	private static final String MAX_CONCURRENT_BATCHES = "maxConcurrentBatches";
+	private static final String USE_VIRTUAL_THREADS = "useVirtualThreads";
+	private static final String ADAPTIVE_CONCURRENCY = "adaptiveConcurrency";
+	private static final String ASYNC_REQUESTS = "asyncRequests";
+	private static final String CACHE_SIZE = "cacheSize";
+	private static final String CACHE_FILE = "cacheFile";
+	private static final String CACHE_FILE_MAX_MB = "cacheFileMaxMb";
+	private static final String ADAPTIVE_BATCHING = "adaptiveBatching";
+	private static final String TARGET_LATENCY_MS = "targetLatencyMs";
+	private static final String COALESCE_WINDOW_MS = "coalesceWindowMs";
+	private static final String COALESCE_MAX_SIZE = "coalesceMaxSize";
+	private static final String HEDGE_PERCENTILE = "hedgePercentile";
+	private static final String HEDGE_BUDGET_PERCENT = "hedgeBudgetPercent";
+	private static final String HEDGE_LOCATION = "hedgeLocation";
+	private static final String CIRCUIT_BREAKER_WINDOW = "circuitBreakerWindow";
+	private static final String CIRCUIT_BREAKER_FAILURE_RATE = "circuitBreakerFailureRate";
+	private static final String CIRCUIT_BREAKER_OPEN_MS = "circuitBreakerOpenMs";
+	private static final String MAX_CHARS_PER_100S = "maxCharsPer100s";
+	private static final String MAX_REQUESTS_PER_100S = "maxRequestsPer100s";
+	private static final String BATCH_INPUT_URI = "batchInputUri";
+	private static final String BATCH_OUTPUT_URI = "batchOutputUri";
+	private static final String BATCH_THRESHOLD = "batchThreshold";
+	private static final String BATCH_POLL_INTERVAL_MS = "batchPollIntervalMs";
 	private static final String GOOGLE_APPLICATION_CREDENTIALS = "googleCredentials";
 
 	public String getProjectId() {
@@ -65,7 +89,7 @@ public class GoogleMTv3Parameters extends GoogleMTParameters {
 		if (glossaryId != null) {
 			glossaryId = glossaryId.trim();
 		}
-		setString(MODELID, glossaryId);
+		setString(GLOSSARYID, glossaryId);
 	}
 
 	public String getLocation () {
@@ -79,6 +103,18 @@ public class GoogleMTv3Parameters extends GoogleMTParameters {
 		setString(LOCATION, location);
 	}
 
+	public String getHedgeLocation () {
+		return getString(HEDGE_LOCATION).trim();
+	}
+
+	// Location the hedged queries are sent to, empty for the same location as the first ones
+	public void setHedgeLocation (String hedgeLocation) {
+		if (hedgeLocation != null) {
+			hedgeLocation = hedgeLocation.trim();
+		}
+		setString(HEDGE_LOCATION, hedgeLocation);
+	}
+
 	public String getGoogleCredentials() {
 		return getString(GOOGLE_APPLICATION_CREDENTIALS).trim();
 	}
@@ -90,6 +126,48 @@ public class GoogleMTv3Parameters extends GoogleMTParameters {
 		setString(GOOGLE_APPLICATION_CREDENTIALS, googleCredentials);
 	}
 
+	public String getBatchInputUri () {
+		return getString(BATCH_INPUT_URI).trim();
+	}
+
+	// Folder where the texts are staged for batch translation, e.g. gs://your-gcs-bucket/path/to/input/
+	public void setBatchInputUri (String batchInputUri) {
+		setString(BATCH_INPUT_URI, batchInputUri);
+	}
+
+	public String getBatchOutputUri () {
+		return getString(BATCH_OUTPUT_URI).trim();
+	}
+
+	// Folder where batch translations write their results, e.g. gs://your-gcs-bucket/path/to/results/
+	public void setBatchOutputUri (String batchOutputUri) {
+		setString(BATCH_OUTPUT_URI, batchOutputUri);
+	}
+
+	public int getBatchThreshold () {
+		return getInteger(BATCH_THRESHOLD);
+	}
+
+	// Number of characters in a single call from which it is sent as a batch translation, 0 for never
+	public void setBatchThreshold (int batchThreshold) {
+		setInteger(BATCH_THRESHOLD, batchThreshold);
+	}
+
+	public int getBatchPollIntervalMs () {
+		return getInteger(BATCH_POLL_INTERVAL_MS);
+	}
+
+	public void setBatchPollIntervalMs (int batchPollIntervalMs) {
+		setInteger(BATCH_POLL_INTERVAL_MS, batchPollIntervalMs);
+	}
+
+	@Override
+	public String getModelKey () {
+		// Custom models and glossaries belong to a project: the same ids in another project are
+		// other models and glossaries
+		return getProjectId() + "/" + getLocation() + "/" + getModelId() + "/" + getGlossaryId();
+	}
+
 	@Override
 	public void reset () {
 		super.reset();
@@ -97,7 +175,12 @@ public class GoogleMTv3Parameters extends GoogleMTParameters {
 		setModelId("");
 		setGlossaryId("");
 		setLocation("global");
+		setHedgeLocation("");
 		setGoogleCredentials("");
+		setBatchInputUri("");
+		setBatchOutputUri("");
+		setBatchThreshold(0);
+		setBatchPollIntervalMs(30 * 1000);
 		// The most likely error we will encounter is the rate limit of 100k
 		// characters translated per 100 seconds.  We will retry every 10s
 		// up to 10x, which is enough to flush the rate limit.
@@ -129,10 +212,82 @@ public class GoogleMTv3Parameters extends GoogleMTParameters {
 	        "Number of retries to attempt before failing");
 		desc.add(RETRY_MS,
 		        "Retry Interval (ms)",
-		        "Time to wait before retrying a failed query");
+		        "Time to wait before the first retry of a failed query, doubled at each retry");
+		desc.add(MAX_RETRY_MS,
+		        "Maximum Retry Interval (ms)",
+		        "Longest time to wait between retries, unless Google asks for longer");
 		desc.add(FAILURES_BEFORE_ABORT,
 		        "Failures before abort",
 		        "Number of times we let queries fail (after retries) before aborting the process");
+		desc.add(MAX_CONCURRENT_BATCHES,
+		        "Concurrent batches",
+		        "Maximum number of batch requests sent to the server at the same time");
+		desc.add(USE_VIRTUAL_THREADS,
+		        "Use virtual threads",
+		        "Run each batch request and its retries on a virtual thread (Java 21 or later)");
+		desc.add(ASYNC_REQUESTS,
+		        "Asynchronous requests",
+		        "Send the batch requests without a thread waiting for each of them, and collect the results as they come back");
+		desc.add(ADAPTIVE_CONCURRENCY,
+		        "Adapt the number of concurrent requests",
+		        "Send fewer requests at once when Google slows down, and more when it keeps up, up to the maximum number of concurrent batches");
+		desc.add(CACHE_SIZE,
+		        "Cache size",
+		        "Maximum number of translations kept in memory to avoid translating the same text twice (0 for no cache)");
+		desc.add(CACHE_FILE,
+		        "Cache file",
+		        "File where translations are kept between runs (leave empty for no persistent cache)");
+		desc.add(CACHE_FILE_MAX_MB,
+		        "Cache file size limit (MB)",
+		        "Size above which the oldest translations are dropped from the cache file (0 for no limit)");
+		desc.add(ADAPTIVE_BATCHING,
+		        "Adapt the batch size",
+		        "Make the batches smaller when Google is slow or overloaded, and larger again when it recovers");
+		desc.add(TARGET_LATENCY_MS,
+		        "Target latency (ms)",
+		        "Response time above which adaptive batches are made smaller");
+		desc.add(COALESCE_WINDOW_MS,
+		        "Coalescing window (ms)",
+		        "Time a single query waits for other queries to be sent with it in one request (0 to send each query at once)");
+		desc.add(COALESCE_MAX_SIZE,
+		        "Coalescing batch size",
+		        "Number of waiting queries at which they are sent without waiting for the end of the window");
+		desc.add(HEDGE_PERCENTILE,
+		        "Hedging percentile",
+		        "Send a single query again if it takes longer than this percentile of the recent response times, and keep the first answer (0 for never)");
+		desc.add(HEDGE_BUDGET_PERCENT,
+		        "Hedging budget (%)",
+		        "Largest number of queries sent again, as a percentage of the queries sent");
+		desc.add(HEDGE_LOCATION,
+		        "Hedging location",
+		        "Location the queries are sent again to (leave empty to use the same location)");
+		desc.add(CIRCUIT_BREAKER_WINDOW,
+		        "Circuit breaker window",
+		        "Number of recent calls watched to suspend calls while Google is failing (0 for no circuit breaker)");
+		desc.add(CIRCUIT_BREAKER_FAILURE_RATE,
+		        "Circuit breaker failure rate (%)",
+		        "Percentage of failed calls in the window at which calls are suspended");
+		desc.add(CIRCUIT_BREAKER_OPEN_MS,
+		        "Circuit breaker open time (ms)",
+		        "Time calls are suspended for before a single call is tried again");
+		desc.add(MAX_CHARS_PER_100S,
+		        "Characters per 100 seconds",
+		        "Maximum number of characters sent per 100 seconds, shared by all the connectors using the same credentials (0 for no limit)");
+		desc.add(MAX_REQUESTS_PER_100S,
+		        "Requests per 100 seconds",
+		        "Maximum number of requests sent per 100 seconds, shared by all the connectors using the same credentials (0 for no limit)");
+		desc.add(BATCH_INPUT_URI,
+		        "Batch input folder",
+		        "Folder where the texts are staged for batch translation, e.g. gs://your-gcs-bucket/path/to/input/");
+		desc.add(BATCH_OUTPUT_URI,
+		        "Batch output folder",
+		        "Folder where batch translations write their results, e.g. gs://your-gcs-bucket/path/to/results/");
+		desc.add(BATCH_THRESHOLD,
+		        "Batch translation threshold",
+		        "Number of characters to translate in one call from which a long-running batch translation is used instead of regular requests (0 for never)");
+		desc.add(BATCH_POLL_INTERVAL_MS,
+		        "Batch poll interval (ms)",
+		        "Time between two checks of whether a batch translation is done");
 		return desc;
 	}
 
@@ -147,7 +302,35 @@ public class GoogleMTv3Parameters extends GoogleMTParameters {
 		desc.addTextInputPart(paramsDesc.get(LOCATION));
 		desc.addTextInputPart(paramsDesc.get(RETRY_COUNT));
 		desc.addTextInputPart(paramsDesc.get(RETRY_MS));
+		desc.addTextInputPart(paramsDesc.get(MAX_RETRY_MS));
 		desc.addTextInputPart(paramsDesc.get(FAILURES_BEFORE_ABORT));
+		desc.addTextInputPart(paramsDesc.get(MAX_CONCURRENT_BATCHES));
+		desc.addCheckboxPart(paramsDesc.get(USE_VIRTUAL_THREADS));
+		desc.addCheckboxPart(paramsDesc.get(ASYNC_REQUESTS));
+		desc.addCheckboxPart(paramsDesc.get(ADAPTIVE_CONCURRENCY));
+		desc.addTextInputPart(paramsDesc.get(CACHE_SIZE));
+		tip = desc.addTextInputPart(paramsDesc.get(CACHE_FILE));
+		tip.setAllowEmpty(true);
+		desc.addTextInputPart(paramsDesc.get(CACHE_FILE_MAX_MB));
+		desc.addCheckboxPart(paramsDesc.get(ADAPTIVE_BATCHING));
+		desc.addTextInputPart(paramsDesc.get(TARGET_LATENCY_MS));
+		desc.addTextInputPart(paramsDesc.get(COALESCE_WINDOW_MS));
+		desc.addTextInputPart(paramsDesc.get(COALESCE_MAX_SIZE));
+		desc.addTextInputPart(paramsDesc.get(HEDGE_PERCENTILE));
+		desc.addTextInputPart(paramsDesc.get(HEDGE_BUDGET_PERCENT));
+		tip = desc.addTextInputPart(paramsDesc.get(HEDGE_LOCATION));
+		tip.setAllowEmpty(true);
+		desc.addTextInputPart(paramsDesc.get(CIRCUIT_BREAKER_WINDOW));
+		desc.addTextInputPart(paramsDesc.get(CIRCUIT_BREAKER_FAILURE_RATE));
+		desc.addTextInputPart(paramsDesc.get(CIRCUIT_BREAKER_OPEN_MS));
+		desc.addTextInputPart(paramsDesc.get(MAX_CHARS_PER_100S));
+		desc.addTextInputPart(paramsDesc.get(MAX_REQUESTS_PER_100S));
+		tip = desc.addTextInputPart(paramsDesc.get(BATCH_INPUT_URI));
+		tip.setAllowEmpty(true);
+		tip = desc.addTextInputPart(paramsDesc.get(BATCH_OUTPUT_URI));
+		tip.setAllowEmpty(true);
+		desc.addTextInputPart(paramsDesc.get(BATCH_THRESHOLD));
+		desc.addTextInputPart(paramsDesc.get(BATCH_POLL_INTERVAL_MS));
 		return desc;
 	}
 
@@ -18,35 +18,78 @@ package net.sf.okapi.connectors.google.v3;
 
 import net.sf.okapi.connectors.google.GoogleQueryBuilder;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Packs several texts into the contents of a single TranslateTextRequest.
+ */
 public class GoogleV3QueryBuilder<T> extends GoogleQueryBuilder<T> {
-    // "The URL for GET requests, including parameters, must be less than 2K characters."
-    // https://cloud.google.com/translate/docs/translating-text#translating_text_1
+    // A request takes at most 1024 contents, and the total should stay below 30K code points.
+    // https://cloud.google.com/translate/docs/reference/rest/v3/projects/translateText
+    public static final int CONTENT_LIMIT = 1024;
+    public static final int CODE_POINT_LIMIT = 30000;
 
-    private String text;
     protected GoogleMTv3Parameters params;
+    private int codePointCount;
+    private int codePointLimit = CODE_POINT_LIMIT;
+    private int contentLimit = CONTENT_LIMIT;
 
-    public GoogleV3QueryBuilder(String text, GoogleMTv3Parameters params, String srcCode, String tgtCode) {
+    public GoogleV3QueryBuilder(GoogleMTv3Parameters params, String srcCode, String tgtCode) {
         this.params = params;
         this.srcCode = srcCode;
         this.tgtCode = tgtCode;
-        this.text = text;
         reset();
     }
 
     public void reset() {
         sourceTexts.clear();
         sources.clear();
+        codePointCount = 0;
+    }
+
+    /**
+     * Sets limits on the size of the batch, below the ones of the API.
+     */
+    public void setLimits(int codePointLimit, int contentLimit) {
+        this.codePointLimit = Math.min(codePointLimit, CODE_POINT_LIMIT);
+        this.contentLimit = Math.min(contentLimit, CONTENT_LIMIT);
+    }
+
+    /**
+     * Indicates if a text can be added to this batch. The first text always fits, so that an
+     * oversized text is sent by itself.
+     */
+    public boolean hasCapacity(String sourceText) {
+        if (sourceTexts.isEmpty()) {
+            return true;
+        }
+        return (sourceTexts.size() < contentLimit)
+                && (codePointCount + sourceText.codePointCount(0, sourceText.length()) <= codePointLimit);
     }
 
     public void addQuery(String sourceText, T source) {
+        if (!hasCapacity(sourceText)) {
+            throw new IllegalStateException("Query too long to add '" + sourceText + "'");
+        }
+        codePointCount += sourceText.codePointCount(0, sourceText.length());
         sourceTexts.add(sourceText);
         sources.add(source);
     }
+
+    public int getCodePointCount() {
+        return codePointCount;
+    }
+
+    /**
+     * Gets the number of code points to translate, which is what the v3 API counts against the quota.
+     */
+    public int getCharacterCount() {
+        return codePointCount;
+    }
+
+    /**
+     * Returns the texts of the batch, one per line, for logging.
+     */
     public String getQuery() {
-        return text;
+        return String.join("\n", sourceTexts);
     }
 
 }
@@ -0,0 +1,79 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google.v3;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link BatchStorage} on the local file system. URIs are either <code>file:</code> URIs or plain
+ * paths; the URIs returned by {@link #list(String)} are absolute, in the same form as the prefix.
+ */
+public class LocalBatchStorage implements BatchStorage {
+
+    @Override
+    public Writer openWriter(String uri) throws IOException {
+        Path path = toPath(uri);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Reader openReader(String uri) throws IOException {
+        return Files.newBufferedReader(toPath(uri), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public List<String> list(String uriPrefix) throws IOException {
+        Path prefix = toPath(uriPrefix).toAbsolutePath();
+        // A prefix not ending with a slash may end in the middle of a file name
+        boolean isFolder = uriPrefix.endsWith("/");
+        Path folder = isFolder ? prefix : prefix.getParent();
+        if (folder == null || !Files.isDirectory(folder)) {
+            return new ArrayList<>();
+        }
+        boolean fileUri = uriPrefix.startsWith("file:");
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(Files::isRegularFile)
+                        .filter(p -> isFolder || p.toString().startsWith(prefix.toString()))
+                        .sorted()
+                        .map(p -> fileUri ? p.toUri().toString() : p.toString())
+                        .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void delete(String uri) throws IOException {
+        Files.deleteIfExists(toPath(uri));
+    }
+
+    private static Path toPath(String uri) {
+        return uri.startsWith("file:") ? Paths.get(URI.create(uri)) : Paths.get(uri);
+    }
+}
@@ -0,0 +1,117 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+
+package net.sf.okapi.connectors.google.v3;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.json.simple.parser.ParseException;
+
+import net.sf.okapi.connectors.google.GoogleMTAPI;
+import net.sf.okapi.connectors.google.TranslationResponse;
+
+/**
+ * Stand-in for the batch translation of the service, for files in a {@link BatchStorage} the
+ * service cannot reach, such as a {@link LocalBatchStorage}. It reads the staged file, translates
+ * its texts with the online calls of the API, and writes the results the way the service does, so
+ * that staging, polling and reading back run end to end without Cloud Storage, for instance against
+ * a mock of the API.
+ */
+public class LocalBatchTranslationAPI implements BatchTranslationAPI {
+    private final GoogleMTAPI api;
+    private final BatchStorage storage;
+    private final GoogleMTv3Parameters params;
+
+    public LocalBatchTranslationAPI(GoogleMTAPI api, BatchStorage storage, GoogleMTv3Parameters params) {
+        this.api = api;
+        this.storage = storage;
+        this.params = params;
+    }
+
+    /**
+     * Translates the file on a thread of its own. Cancelling the future stops the translation
+     * before the next request.
+     */
+    @Override
+    public Future<?> batchTranslate(String srcCode, String trgCode, String inputUri, String outputUriPrefix) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                translate(srcCode, trgCode, inputUri, outputUriPrefix, result);
+                result.complete(null);
+            }
+            catch (IOException | ParseException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }, "google-mt-local-batch");
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    private void translate(String srcCode, String trgCode, String inputUri, String outputUriPrefix,
+                           Future<?> result) throws IOException, ParseException {
+        String name = inputUri.substring(inputUri.lastIndexOf('/') + 1);
+        if (name.lastIndexOf('.') > 0) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+        String outputUri = (outputUriPrefix.endsWith("/") ? outputUriPrefix : outputUriPrefix + "/")
+                + name + "_" + trgCode + "_translations.tsv";
+        try (BufferedReader reader = new BufferedReader(storage.openReader(inputUri));
+             Writer writer = storage.openWriter(outputUri)) {
+            GoogleV3QueryBuilder<String> qb = new GoogleV3QueryBuilder<>(params, srcCode, trgCode);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                String text = line.substring(tab + 1);
+                if (!qb.hasCapacity(text)) {
+                    flush(qb, writer, result);
+                }
+                // The id goes along as the source, to be written back with the translation
+                qb.addQuery(text, line.substring(0, tab));
+            }
+            if (qb.getSourceCount() > 0) {
+                flush(qb, writer, result);
+            }
+        }
+    }
+
+    private void flush(GoogleV3QueryBuilder<String> qb, Writer writer, Future<?> result)
+            throws IOException, ParseException {
+        if (result.isCancelled()) {
+            throw new IllegalStateException("Batch translation cancelled");
+        }
+        List<TranslationResponse> responses = api.translate(qb);
+        for (int i = 0; i < responses.size(); i++) {
+            writer.write(qb.getSources().get(i));
+            writer.write('\t');
+            writer.write(qb.getSourceTexts().get(i));
+            writer.write('\t');
+            writer.write(BulkTranslator.escape(responses.get(i).getTarget()));
+            writer.write('\n');
+        }
+        qb.reset();
+    }
+}
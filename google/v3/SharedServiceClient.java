@@ -0,0 +1,149 @@
+/*===========================================================================
+  Copyright (C) 2017 by the Okapi Framework contributors
+-----------------------------------------------------------------------------
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+===========================================================================*/
+
+package net.sf.okapi.connectors.google.v3;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.cloud.translate.v3.TranslationServiceClient;
+
+import net.sf.okapi.common.exceptions.OkapiException;
+
+/**
+ * A {@link TranslationServiceClient} with its credentials, shared through
+ * {@link net.sf.okapi.connectors.google.SharedResources} by the connectors using the same
+ * service account.
+ * <p>
+ * The first access token is fetched when the client is created, and the next ones a little before
+ * the current one expires, in the background, so that requests don't block on a token fetch.
+ * Closing the client stops the refresh and releases the channel.
+ */
+public final class SharedServiceClient {
+    private static final Logger LOG = LoggerFactory.getLogger(SharedServiceClient.class);
+    // Refreshes the tokens of all the instances. Its tasks are short, so that refreshes run on time.
+    static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "google-mt-v3-auth");
+        t.setDaemon(true);
+        return t;
+    });
+    // Creates the clients ahead of the first requests, which can take seconds on a slow network
+    private static final int WARM_UP_THREADS = 2;
+    static final ExecutorService WARM_UP_EXECUTOR = newWarmUpExecutor();
+    // Tokens are refreshed that long before they expire
+    private static final long REFRESH_MARGIN_MS = 5 * 60 * 1000;
+    private static final long MIN_REFRESH_DELAY_MS = 10 * 1000;
+    private static final long RETRY_REFRESH_DELAY_MS = 60 * 1000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final GoogleAuthentication auth = new GoogleAuthentication();
+    private final TranslationServiceClient client;
+    private ScheduledFuture<?> refreshTask;
+    private boolean closed;
+
+    /**
+     * Loads the credentials, fetches a first token and creates the client.
+     * @param credentialFilePath the service account JSON file.
+     */
+    public SharedServiceClient(String credentialFilePath) throws IOException {
+        try {
+            auth.setCredentialFilePath(credentialFilePath);
+            long expiration = auth.refreshToken();
+            client = auth.getTranslationServiceSettings();
+            scheduleRefresh(expiration);
+        } catch (OkapiException e) {
+            throw new OkapiException("Error creating service client: " + e.getMessage(), e);
+        }
+    }
+
+    public TranslationServiceClient getClient() {
+        return client;
+    }
+
+    /**
+     * Stops the token refresh and shuts the client down, waiting a little for the calls in flight.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (refreshTask != null) {
+                refreshTask.cancel(false);
+                refreshTask = null;
+            }
+        }
+        client.shutdown();
+        try {
+            if (!client.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Google MT client still busy after {} s, closing it anyway", SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        client.close();
+    }
+
+    /**
+     * Schedules the next refresh of the access token a little before it expires.
+     */
+    private synchronized void scheduleRefresh(long expiration) {
+        if (expiration < 0 || closed) {
+            return;
+        }
+        long delayMs = Math.max(MIN_REFRESH_DELAY_MS, expiration - System.currentTimeMillis() - REFRESH_MARGIN_MS);
+        refreshTask = SCHEDULER.schedule(this::refreshToken, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshToken() {
+        try {
+            scheduleRefresh(auth.refreshToken());
+            LOG.debug("Google MT access token refreshed");
+        }
+        catch (IOException | RuntimeException e) {
+            // The client would fetch a token itself when needed; try again later anyway
+            LOG.warn("Could not refresh the Google MT access token: {}", e.getMessage());
+            synchronized (this) {
+                if (!closed) {
+                    refreshTask = SCHEDULER.schedule(this::refreshToken, RETRY_REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the executor of the warm-ups: a few daemon threads, which stop when there is nothing
+     * to warm up.
+     */
+    private static ExecutorService newWarmUpExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(WARM_UP_THREADS, WARM_UP_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "google-mt-v3-warm-up");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}